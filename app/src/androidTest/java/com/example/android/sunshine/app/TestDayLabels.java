@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+/*
+    Checks that remembered day labels are the ones Utility would have formatted, and that
+    forgetting them formats them again.
+ */
+public class TestDayLabels extends AndroidTestCase {
+
+    public void testLabelsAreRemembered() {
+        Time time = new Time();
+        time.setToNow();
+        int julianDay = Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+        long today = time.setJulianDay(julianDay);
+        long tomorrow = time.setJulianDay(julianDay + 1);
+        long nextWeek = time.setJulianDay(julianDay + 8);
+
+        long[] dates = {today, tomorrow, nextWeek};
+        for (long date : dates) {
+            String friendly = Utility.getFriendlyDayString(mContext, date, false);
+            String longToday = Utility.getFriendlyDayString(mContext, date, true);
+            String full = Utility.getFullFriendlyDayString(mContext, date);
+            String dayName = Utility.getDayName(mContext, date);
+            String monthDay = Utility.getFormattedMonthDay(mContext, date);
+
+            assertSame("Error: Friendly label wasn't remembered", friendly,
+                    Utility.getFriendlyDayString(mContext, date, false));
+            assertSame(longToday, Utility.getFriendlyDayString(mContext, date, true));
+            assertSame(full, Utility.getFullFriendlyDayString(mContext, date));
+            assertSame(dayName, Utility.getDayName(mContext, date));
+            assertSame(monthDay, Utility.getFormattedMonthDay(mContext, date));
+
+            DayLabels.invalidate();
+            assertEquals("Error: Formatting again gave a different label", friendly,
+                    Utility.getFriendlyDayString(mContext, date, false));
+            assertEquals(longToday, Utility.getFriendlyDayString(mContext, date, true));
+            assertEquals(full, Utility.getFullFriendlyDayString(mContext, date));
+            assertEquals(dayName, Utility.getDayName(mContext, date));
+            assertEquals(monthDay, Utility.getFormattedMonthDay(mContext, date));
+        }
+
+        assertEquals(mContext.getString(R.string.today),
+                Utility.getFriendlyDayString(mContext, today, false));
+        assertEquals(mContext.getString(R.string.tomorrow), Utility.getDayName(mContext, tomorrow));
+    }
+}
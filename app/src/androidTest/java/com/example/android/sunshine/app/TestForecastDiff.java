@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Checks that the forecast list is told about exactly the rows that changed between two loads.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long TODAY = System.currentTimeMillis();
+
+    private static final String[] COLUMNS = {"_id", "date", "short_desc", "max", "min",
+            "location_setting", "weather_id", "coord_lat", "coord_long"};
+
+    public void testNothingChanged() {
+        List<ForecastItem> items = createItems(new long[]{1, 2, 3}, new int[]{800, 800, 800});
+        List<ForecastItem> sameItems = createItems(new long[]{1, 2, 3}, new int[]{800, 800, 800});
+        ForecastDiff diff = ForecastDiff.compute(items, sameItems);
+        assertTrue("Error: Identical loads should have no changes", diff.isEmpty());
+        assertEquals(0, dispatch(diff).size());
+    }
+
+    public void testOneDayChanged() {
+        List<ForecastItem> oldItems = createItems(new long[]{1, 2, 3}, new int[]{800, 800, 800});
+        List<ForecastItem> newItems = createItems(new long[]{1, 2, 3}, new int[]{800, 501, 800});
+        assertEquals(Arrays.asList("change 1 1"),
+                dispatch(ForecastDiff.compute(oldItems, newItems)));
+    }
+
+    public void testDayRolledOver() {
+        // The first day is gone and a new one is added at the end.  The new first day is bound
+        // again, as it may now be shown with the "today" layout.
+        List<ForecastItem> oldItems = createItems(new long[]{1, 2, 3}, new int[]{800, 800, 800});
+        List<ForecastItem> newItems = createItems(new long[]{2, 3, 4}, new int[]{800, 800, 800});
+        assertEquals(Arrays.asList("remove 0 1", "change 0 1", "insert 2 1"),
+                dispatch(ForecastDiff.compute(oldItems, newItems)));
+    }
+
+    public void testFirstLoad() {
+        List<ForecastItem> newItems = createItems(new long[]{1, 2, 3}, new int[]{800, 800, 800});
+        assertEquals(Arrays.asList("insert 0 3"),
+                dispatch(ForecastDiff.compute(new ArrayList<ForecastItem>(), newItems)));
+    }
+
+    public void testOtherLocation() {
+        // Same days, but different rows
+        List<ForecastItem> oldItems = createItems(new long[]{1, 2}, new int[]{800, 800});
+        List<ForecastItem> newItems = createItems(new long[]{11, 12}, new int[]{800, 800});
+        assertEquals(Arrays.asList("remove 0 1", "insert 0 1", "remove 1 1", "insert 1 1"),
+                dispatch(ForecastDiff.compute(oldItems, newItems)));
+    }
+
+    /**
+     * Each row's day is the last digit of its id, day 1 being today.
+     */
+    private List<ForecastItem> createItems(long[] ids, int[] weatherIds) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int i = 0; i < ids.length; i++) {
+            long date = TODAY + (ids[i] % 10 - 1) * DAY_IN_MILLIS;
+            cursor.addRow(new Object[]{ids[i], date, "", 20.0, 10.0, "99705", weatherIds[i],
+                    64.7, -147.4});
+        }
+        List<ForecastItem> items = ForecastItem.fromCursor(mContext, cursor);
+        cursor.close();
+        return items;
+    }
+
+    private List<String> dispatch(ForecastDiff diff) {
+        final List<String> events = new ArrayList<String>();
+        RecyclerView.Adapter adapter = new RecyclerView.Adapter() {
+            @Override
+            public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+                return null;
+            }
+
+            @Override
+            public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            }
+
+            @Override
+            public int getItemCount() {
+                return 0;
+            }
+        };
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                events.add("insert " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                events.add("remove " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                events.add("change " + positionStart + " " + itemCount);
+            }
+        });
+        diff.dispatchTo(adapter);
+        return events;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+import java.util.List;
+
+/*
+    Checks that the forecast list's rows come out of the loader formatted exactly as the list
+    used to format them while binding.
+ */
+public class TestForecastItem extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // In the order of ForecastFragment's COL_ indices
+    private static final String[] COLUMNS = {"_id", "date", "short_desc", "max", "min",
+            "location_setting", "weather_id", "coord_lat", "coord_long"};
+
+    public void testFromCursor() {
+        long today = System.currentTimeMillis();
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        cursor.addRow(new Object[]{7L, today, "Clear", 21.5, 11.2, "99705", 800, 64.7, -147.4});
+        cursor.addRow(new Object[]{8L, today + DAY_IN_MILLIS, "Rain", 15.0, 9.0, "99705", 501,
+                64.7, -147.4});
+
+        List<ForecastItem> items = ForecastItem.fromCursor(mContext, cursor);
+        assertEquals(2, items.size());
+
+        ForecastItem first = items.get(0);
+        assertEquals(7L, first.id);
+        assertEquals(today, first.date);
+        assertEquals(Utility.getFriendlyDayString(mContext, today, true), first.todayDateText);
+        assertEquals(Utility.getFriendlyDayString(mContext, today, false), first.dateText);
+        assertEquals(Utility.getArtResourceForWeatherCondition(800), first.artResource);
+        assertEquals(Utility.getIconResourceForWeatherCondition(800), first.iconResource);
+        assertEquals(Utility.getStringForWeatherCondition(mContext, 800), first.description);
+        assertEquals(mContext.getString(R.string.a11y_forecast, first.description),
+                first.descriptionA11y);
+        assertEquals(Utility.formatTemperature(mContext, 21.5), first.highText);
+        assertEquals(mContext.getString(R.string.a11y_high_temp, first.highText), first.highA11y);
+        assertEquals(Utility.formatTemperature(mContext, 11.2), first.lowText);
+        assertEquals(mContext.getString(R.string.a11y_low_temp, first.lowText), first.lowA11y);
+
+        ForecastItem second = items.get(1);
+        assertEquals("Error: Only the first day can be shown as today",
+                second.dateText, second.todayDateText);
+        assertEquals(Utility.getStringForWeatherCondition(mContext, 501), second.description);
+
+        try {
+            items.add(first);
+            fail("Error: The items should not be modifiable");
+        } catch (UnsupportedOperationException expected) {
+            // expected
+        }
+        cursor.close();
+    }
+
+    public void testEmptyCursor() {
+        assertTrue(ForecastItem.fromCursor(mContext, null).isEmpty());
+        assertTrue(ForecastItem.fromCursor(mContext, new MatrixCursor(COLUMNS)).isEmpty());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.concurrent.Callable;
+
+/*
+    Checks that the settings Utility reads follow changes to the preferences.
+ */
+public class TestPreferenceSnapshot extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedUnits = mPrefs.getString(mUnitsKey, null);
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(R.string.pref_units_metric)).commit();
+        PreferenceSnapshot.refresh(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mSavedUnits == null) {
+            mPrefs.edit().remove(mUnitsKey).commit();
+        } else {
+            mPrefs.edit().putString(mUnitsKey, mSavedUnits).commit();
+        }
+        PreferenceSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    public void testRefreshSeesWrite() {
+        assertTrue(Utility.isMetric(mContext));
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(R.string.pref_units_imperial))
+                .commit();
+        PreferenceSnapshot.refresh(mContext);
+        assertFalse("Error: The refreshed snapshot should have the new units",
+                Utility.isMetric(mContext));
+    }
+
+    public void testListenerUpdatesSnapshot() throws Exception {
+        assertTrue(Utility.isMetric(mContext));
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(R.string.pref_units_imperial))
+                .commit();
+        PollingCheck.check("Error: The snapshot didn't follow the preference change", 5000,
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return !Utility.isMetric(mContext);
+                    }
+                });
+    }
+
+    public void testSnapshotIsShared() {
+        assertSame("Error: Reads without a change should share one snapshot",
+                PreferenceSnapshot.get(mContext), PreferenceSnapshot.get(mContext));
+    }
+}
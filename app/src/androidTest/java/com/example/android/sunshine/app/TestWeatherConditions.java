@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Locale;
+
+/*
+    Checks that the WeatherConditions tables give exactly what Utility's if-else chains used to,
+    for every id, and measures both.  Benchmark results are logged as lookups/sec under this
+    class's tag.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherConditions.class.getSimpleName();
+
+    private static final String ART_URL_FORMAT =
+            "https://raw.githubusercontent.com/udacity/sunshine_art/master/art_%s.png";
+
+    // A day's worth of conditions as a sync might return them, repeated for the benchmark
+    private static final int[] WEATHER_IDS = {800, 801, 500, 211, 802, 741, 600, 781, 951, 301};
+
+    public void testMatchesOldLookups() {
+        for (int weatherId = 0; weatherId <= 1000; weatherId++) {
+            assertEquals("Error: Wrong icon for " + weatherId,
+                    oldIconResource(weatherId), WeatherConditions.getIconResource(weatherId));
+            assertEquals("Error: Wrong art for " + weatherId,
+                    oldArtResource(weatherId), WeatherConditions.getArtResource(weatherId));
+            assertEquals("Error: Wrong art URL for " + weatherId,
+                    oldArtUrl(ART_URL_FORMAT, weatherId),
+                    WeatherConditions.getArtUrl(ART_URL_FORMAT, weatherId));
+            assertEquals("Error: Wrong image URL for " + weatherId,
+                    oldImageUrl(weatherId), WeatherConditions.getImageUrl(weatherId));
+        }
+    }
+
+    public void testStrings() {
+        assertEquals(R.string.condition_2xx, WeatherConditions.getStringResource(232));
+        assertEquals(R.string.condition_3xx, WeatherConditions.getStringResource(300));
+        assertEquals(R.string.condition_761, WeatherConditions.getStringResource(761));
+        assertEquals(R.string.condition_962, WeatherConditions.getStringResource(962));
+        assertEquals(0, WeatherConditions.getStringResource(505));
+        assertEquals(0, WeatherConditions.getStringResource(199));
+        assertEquals(0, WeatherConditions.getStringResource(963));
+
+        assertEquals(mContext.getString(R.string.condition_800),
+                Utility.getStringForWeatherCondition(mContext, 800));
+        assertEquals(mContext.getString(R.string.condition_unknown, 505),
+                Utility.getStringForWeatherCondition(mContext, 505));
+    }
+
+    public void testArtPackChange() {
+        String otherFormat = "https://example.com/%s.png";
+        assertEquals("https://example.com/clear.png",
+                WeatherConditions.getArtUrl(otherFormat, 800));
+        assertEquals(oldArtUrl(ART_URL_FORMAT, 800),
+                WeatherConditions.getArtUrl(ART_URL_FORMAT, 800));
+    }
+
+    public void testBenchmark() {
+        int lookups = 1000000;
+        int checksum = 0;
+
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < lookups; i++) {
+            checksum += oldIconResource(WEATHER_IDS[i % WEATHER_IDS.length]);
+        }
+        logRate("icon, if-else chain", lookups, start);
+
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < lookups; i++) {
+            checksum -= WeatherConditions.getIconResource(WEATHER_IDS[i % WEATHER_IDS.length]);
+        }
+        logRate("icon, table", lookups, start);
+        assertEquals(0, checksum);
+
+        // Formatting is much slower, so fewer of these
+        lookups /= 10;
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < lookups; i++) {
+            checksum += oldArtUrl(ART_URL_FORMAT, WEATHER_IDS[i % WEATHER_IDS.length]).length();
+        }
+        logRate("art URL, if-else chain", lookups, start);
+
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < lookups; i++) {
+            checksum -= WeatherConditions.getArtUrl(ART_URL_FORMAT,
+                    WEATHER_IDS[i % WEATHER_IDS.length]).length();
+        }
+        logRate("art URL, table", lookups, start);
+        assertEquals(0, checksum);
+    }
+
+    private static void logRate(String path, int lookups, long start) {
+        long elapsed = Math.max(SystemClock.elapsedRealtime() - start, 1);
+        Log.i(LOG_TAG, path + ": " + lookups + " lookups in " + elapsed + "ms, "
+                + (lookups * 1000L / elapsed) + " lookups/sec");
+    }
+
+    // What the Utility methods did before they used WeatherConditions
+
+    private static int oldIconResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int oldArtResource(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private static String oldArtUrl(String formatArtUrl, int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return String.format(Locale.US, formatArtUrl, "light_rain");
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId == 511) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return String.format(Locale.US, formatArtUrl, "fog");
+        } else if (weatherId == 761 || weatherId == 781) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId == 800) {
+            return String.format(Locale.US, formatArtUrl, "clear");
+        } else if (weatherId == 801) {
+            return String.format(Locale.US, formatArtUrl, "light_clouds");
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return String.format(Locale.US, formatArtUrl, "clouds");
+        }
+        return null;
+    }
+
+    private static String oldImageUrl(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Measures how fast weather rows get into the database, comparing the per-row db.insert()
+    loop bulkInsert used to run with the compiled statement it uses now, and with WeatherBatch.
+    Results are logged as rows/sec under this class's tag.
+ */
+public class TestBulkInsertBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestBulkInsertBenchmark.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testWeatherBatchInsert() {
+        WeatherBatch batch = createWeatherBatch(3);
+        ContentValues[] expectedValues = batch.toContentValues();
+
+        assertEquals(3, batch.insert(mContext.getContentResolver()));
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(3, cursor.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            TestUtilities.validateCurrentRecord("testWeatherBatchInsert. Error validating row " + i,
+                    cursor, expectedValues[i]);
+        }
+        cursor.close();
+    }
+
+    public void testBulkInsert14() {
+        runBenchmark(14);
+    }
+
+    public void testBulkInsert1k() {
+        runBenchmark(1000);
+    }
+
+    public void testBulkInsert100k() {
+        runBenchmark(100000);
+    }
+
+    private void runBenchmark(int rows) {
+        WeatherBatch batch = createWeatherBatch(rows);
+
+        ContentValues[] values = batch.toContentValues();
+        long start = SystemClock.elapsedRealtime();
+        assertEquals(rows, insertRowByRow(values));
+        logRate("db.insert() per row", rows, start);
+        deleteWeather();
+
+        // The dates in the values are normalized by now, which doesn't change them again
+        start = SystemClock.elapsedRealtime();
+        assertEquals(rows, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values));
+        logRate("bulkInsert(ContentValues[])", rows, start);
+        deleteWeather();
+
+        start = SystemClock.elapsedRealtime();
+        assertEquals(rows, batch.insert(mContext.getContentResolver()));
+        logRate("WeatherBatch", rows, start);
+        deleteWeather();
+    }
+
+    // What WeatherProvider.bulkInsert() did before it compiled its insert statement
+    private int insertRowByRow(ContentValues[] values) {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        int returnCount = 0;
+        db.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                long dateValue = value.getAsLong(WeatherEntry.COLUMN_DATE);
+                value.put(WeatherEntry.COLUMN_DATE, WeatherContract.normalizeDate(dateValue));
+                long _id = db.insert(WeatherEntry.TABLE_NAME, null, value);
+                if (_id != -1) {
+                    returnCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+        return returnCount;
+    }
+
+    private void deleteWeather() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+    }
+
+    private WeatherBatch createWeatherBatch(int rows) {
+        WeatherBatch batch = new WeatherBatch(rows);
+        long date = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+        for (int i = 0; i < rows; i++, date += DAY_IN_MILLIS) {
+            batch.add(mLocationRowId, date, "Asteroids", 321, 65 - i % 20, 75 + i % 20,
+                    1.2, 1.3, 5.5, 1.1);
+        }
+        return batch;
+    }
+
+    private static void logRate(String path, int rows, long start) {
+        long elapsed = Math.max(SystemClock.elapsedRealtime() - start, 1);
+        Log.i(LOG_TAG, path + ": " + rows + " rows in " + elapsed + "ms, "
+                + (rows * 1000L / elapsed) + " rows/sec");
+    }
+}
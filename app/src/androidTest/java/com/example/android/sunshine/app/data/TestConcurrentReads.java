@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Reads the forecast from several threads, the way the forecast list, the widgets and Muzei
+    do, while a large sync is writing.  With write-ahead logging none of the reads should have
+    to wait for the sync's transaction.
+ */
+public class TestConcurrentReads extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestConcurrentReads.class.getSimpleName();
+
+    private static final int READER_COUNT = 4;
+    private static final int SYNC_ROWS = 20000;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    class Reader extends Thread {
+        final String[] mSelectionArgs;
+        volatile boolean mStopped;
+        volatile int mReads;
+        // Slowest read that overlapped the sync, and how many did
+        volatile long mMaxLatency;
+        volatile int mReadsDuringSync;
+        volatile boolean mSyncRunning;
+        Throwable mError;
+
+        Reader(long locationRowId) {
+            mSelectionArgs = new String[]{Long.toString(locationRowId)};
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!mStopped) {
+                    boolean syncRunning = mSyncRunning;
+                    long start = SystemClock.elapsedRealtime();
+                    // The plain weather URI isn't cached, so every read goes to SQLite
+                    Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                            null, WeatherEntry.COLUMN_LOC_KEY + " = ?", mSelectionArgs,
+                            WeatherEntry.COLUMN_DATE + " ASC");
+                    cursor.getCount();
+                    cursor.close();
+                    long latency = SystemClock.elapsedRealtime() - start;
+                    if (syncRunning && mSyncRunning) {
+                        mReadsDuringSync++;
+                        mMaxLatency = Math.max(mMaxLatency, latency);
+                    }
+                    mReads++;
+                }
+            } catch (Throwable t) {
+                mError = t;
+            }
+        }
+    }
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationRowId = ContentUris.parseId(locationUri);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testReadsDuringSync() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            // Write-ahead logging isn't turned on by the helper here
+            return;
+        }
+
+        // Something for the readers to find
+        WeatherBatch batch = new WeatherBatch(SYNC_ROWS);
+        long date = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < 14; i++) {
+            batch.add(mLocationRowId, date + i * DAY_IN_MILLIS, "Asteroids", 321, 65, 75,
+                    1.2, 1.3, 5.5, 1.1);
+        }
+        batch.insert(mContext.getContentResolver());
+
+        WeatherQueryCache queryCache = getQueryCache();
+        int cacheHits = queryCache != null ? queryCache.getHitCount() : 0;
+
+        final List<Reader> readers = new ArrayList<Reader>();
+        for (int i = 0; i < READER_COUNT; i++) {
+            Reader reader = new Reader(mLocationRowId);
+            readers.add(reader);
+            reader.start();
+        }
+        // Wait until every reader is up and running
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                for (Reader reader : readers) {
+                    if (reader.mReads == 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }.run();
+
+        // One big sync, written in a single transaction
+        batch.clear();
+        for (int i = 0; i < SYNC_ROWS; i++) {
+            batch.add(mLocationRowId, date + (14 + i) * DAY_IN_MILLIS, "Asteroids", 321, 65, 75,
+                    1.2, 1.3, 5.5, 1.1);
+        }
+        for (Reader reader : readers) {
+            reader.mSyncRunning = true;
+        }
+        long start = SystemClock.elapsedRealtime();
+        batch.insert(mContext.getContentResolver());
+        long syncDuration = SystemClock.elapsedRealtime() - start;
+        for (Reader reader : readers) {
+            reader.mSyncRunning = false;
+            reader.mStopped = true;
+        }
+
+        long maxLatency = 0;
+        int readsDuringSync = 0;
+        for (Reader reader : readers) {
+            reader.join(5000);
+            assertNull("Error: Reader failed: " + reader.mError, reader.mError);
+            maxLatency = Math.max(maxLatency, reader.mMaxLatency);
+            readsDuringSync += reader.mReadsDuringSync;
+        }
+        Log.i(LOG_TAG, "Sync of " + SYNC_ROWS + " rows took " + syncDuration + "ms, "
+                + readsDuringSync + " reads completed meanwhile, slowest " + maxLatency + "ms");
+
+        assertTrue("Error: No reads completed while the sync was writing",
+                readsDuringSync > 0);
+        if (queryCache != null) {
+            assertEquals("Error: Reads were answered from the query cache instead of SQLite",
+                    cacheHits, queryCache.getHitCount());
+        }
+        // A reader stuck behind the sync's transaction would have waited for most of it
+        assertTrue("Error: Slowest read took " + maxLatency + "ms during a " + syncDuration
+                + "ms sync", maxLatency < Math.max(syncDuration / 2, 50));
+    }
+
+    private WeatherQueryCache getQueryCache() {
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        WeatherQueryCache queryCache =
+                ((WeatherProvider) client.getLocalContentProvider()).getQueryCache();
+        client.release();
+        return queryCache;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+    Builds database files the way earlier versions of the app left them, opens them with the
+    current WeatherDbHelper, and checks that the data survived and the schema ended up the same
+    as a freshly created database.
+ */
+public class TestDbMigrations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbMigrations.class.getSimpleName();
+
+    // The schemas as released.  These must never change.
+    private static final String V1_CREATE_LOCATION_TABLE = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY,location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, coord_lat REAL NOT NULL, coord_long REAL NOT NULL  );";
+    private static final String V1_CREATE_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT,location_id INTEGER NOT NULL, " +
+            "date TEXT NOT NULL, short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id),  " +
+            "UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    private static final String V2_CREATE_LOCATION_TABLE = V1_CREATE_LOCATION_TABLE;
+    private static final String V2_CREATE_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT,location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id),  " +
+            "UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    /**
+     * Creates weather.db as the given version of the app would have, without WeatherDbHelper.
+     */
+    private SQLiteDatabase createDatabase(int version) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME), null);
+        switch (version) {
+            case 1:
+                db.execSQL(V1_CREATE_LOCATION_TABLE);
+                db.execSQL(V1_CREATE_WEATHER_TABLE);
+                break;
+            case 2:
+                db.execSQL(V2_CREATE_LOCATION_TABLE);
+                db.execSQL(V2_CREATE_WEATHER_TABLE);
+                break;
+            default:
+                fail("No schema for version " + version);
+        }
+        db.setVersion(version);
+        return db;
+    }
+
+    private static long insertLocation(SQLiteDatabase db) {
+        long locationRowId = db.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        assertTrue(locationRowId != -1);
+        return locationRowId;
+    }
+
+    private static void insertWeather(SQLiteDatabase db, long locationRowId, Object date,
+                                      double maxTemp) {
+        ContentValues weatherValues = new ContentValues();
+        weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+        if (date instanceof String) {
+            weatherValues.put(WeatherEntry.COLUMN_DATE, (String) date);
+        } else {
+            weatherValues.put(WeatherEntry.COLUMN_DATE, (Long) date);
+        }
+        weatherValues.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+        weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, maxTemp);
+        weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 65);
+        weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+        weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+        assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+    }
+
+    // Start of the day, relative to today, as stored since version 2
+    private static long dayMillis(int daysFromToday) {
+        Time time = new Time();
+        time.setToNow();
+        int julianToday = Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+        return time.setJulianDay(julianToday + daysFromToday);
+    }
+
+    // The same day as version 1 stored it, "yyyyMMdd" in local time
+    private static String dateText(int daysFromToday) {
+        Time time = new Time();
+        time.set(dayMillis(daysFromToday));
+        return time.format("%Y%m%d");
+    }
+
+    private SQLiteDatabase openCurrent() {
+        return new WeatherDbHelper(mContext).getWritableDatabase();
+    }
+
+    public void testUpgradeFromVersion1() {
+        SQLiteDatabase db = createDatabase(1);
+        long locationRowId = insertLocation(db);
+        insertWeather(db, locationRowId, dateText(-1), 70);
+        insertWeather(db, locationRowId, dateText(0), 75);
+        insertWeather(db, locationRowId, dateText(1), 76);
+        db.close();
+
+        db = openCurrent();
+        assertUpToDate(db);
+        assertLocationKept(db, locationRowId);
+        assertForecast(db, locationRowId, new long[]{dayMillis(0), dayMillis(1)},
+                new double[]{75, 76});
+        db.close();
+    }
+
+    public void testUpgradeFromVersion2() {
+        SQLiteDatabase db = createDatabase(2);
+        long locationRowId = insertLocation(db);
+        insertWeather(db, locationRowId, dayMillis(-1), 70);
+        insertWeather(db, locationRowId, dayMillis(0), 75);
+        insertWeather(db, locationRowId, dayMillis(1), 76);
+        db.close();
+
+        db = openCurrent();
+        assertUpToDate(db);
+        assertLocationKept(db, locationRowId);
+        assertForecast(db, locationRowId, new long[]{dayMillis(0), dayMillis(1)},
+                new double[]{75, 76});
+        db.close();
+    }
+
+    public void testUpgradeWithLargeHistory() {
+        SQLiteDatabase db = createDatabase(1);
+        long locationRowId = insertLocation(db);
+        db.beginTransaction();
+        try {
+            // Years of days that should have been cleaned up, and two weeks of forecast
+            for (int i = 5000; i > 0; i--) {
+                insertWeather(db, locationRowId, dateText(-i), 70);
+            }
+            for (int i = 0; i < 14; i++) {
+                insertWeather(db, locationRowId, dateText(i), 75);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+
+        long start = SystemClock.elapsedRealtime();
+        db = openCurrent();
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        Log.i(LOG_TAG, "Upgrade with 5000 days of history took " + elapsed + "ms");
+
+        assertUpToDate(db);
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME, null, null, null, null, null, null);
+        assertEquals("Error: Only today onwards should be kept", 14, cursor.getCount());
+        cursor.close();
+        db.close();
+    }
+
+    private void assertUpToDate(SQLiteDatabase upgradedDb) {
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, upgradedDb.getVersion());
+
+        // Compare against a database created from scratch
+        String freshName = "migration_reference.db";
+        mContext.deleteDatabase(freshName);
+        SQLiteDatabase freshDb = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(freshName), null);
+        try {
+            new WeatherDbHelper(mContext).onCreate(freshDb);
+            for (String table : new String[]{LocationEntry.TABLE_NAME, WeatherEntry.TABLE_NAME}) {
+                assertEquals("Error: Columns of " + table + " differ after the upgrade",
+                        readColumns(freshDb, table), readColumns(upgradedDb, table));
+                assertEquals("Error: Indexes of " + table + " differ after the upgrade",
+                        readIndexes(freshDb, table), readIndexes(upgradedDb, table));
+            }
+        } finally {
+            freshDb.close();
+            mContext.deleteDatabase(freshName);
+        }
+    }
+
+    // Column name to "type, not null, primary key"
+    private static Map<String, String> readColumns(SQLiteDatabase db, String table) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        Map<String, String> columns = new HashMap<String, String>();
+        while (cursor.moveToNext()) {
+            columns.put(cursor.getString(cursor.getColumnIndex("name")),
+                    cursor.getString(cursor.getColumnIndex("type")) + ", " +
+                            cursor.getInt(cursor.getColumnIndex("notnull")) + ", " +
+                            cursor.getInt(cursor.getColumnIndex("pk")));
+        }
+        cursor.close();
+        return columns;
+    }
+
+    // Indexed columns of every index, whatever it is called
+    private static Set<String> readIndexes(SQLiteDatabase db, String table) {
+        Set<String> indexes = new HashSet<String>();
+        Cursor indexCursor = db.rawQuery("PRAGMA index_list(" + table + ")", null);
+        while (indexCursor.moveToNext()) {
+            String name = indexCursor.getString(indexCursor.getColumnIndex("name"));
+            StringBuilder indexedColumns = new StringBuilder(
+                    indexCursor.getInt(indexCursor.getColumnIndex("unique")) != 0
+                            ? "UNIQUE" : "INDEX");
+            Cursor columnCursor = db.rawQuery("PRAGMA index_info(" + name + ")", null);
+            while (columnCursor.moveToNext()) {
+                indexedColumns.append(' ')
+                        .append(columnCursor.getString(columnCursor.getColumnIndex("name")));
+            }
+            columnCursor.close();
+            indexes.add(indexedColumns.toString());
+        }
+        indexCursor.close();
+        return indexes;
+    }
+
+    private static void assertLocationKept(SQLiteDatabase db, long locationRowId) {
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, null,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(locationRowId)},
+                null, null, null);
+        TestUtilities.validateCursor("Error: Location lost in the upgrade", cursor,
+                TestUtilities.createNorthPoleLocationValues());
+    }
+
+    private static void assertForecast(SQLiteDatabase db, long locationRowId, long[] dates,
+                                       double[] maxTemps) {
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_LOC_KEY, WeatherEntry.COLUMN_DATE,
+                        WeatherEntry.COLUMN_MAX_TEMP},
+                null, null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Wrong days kept in the upgrade", dates.length, cursor.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            assertEquals(locationRowId, cursor.getLong(0));
+            assertEquals("Error: Date of day " + i + " not converted", dates[i], cursor.getLong(1));
+            assertEquals(maxTemps[i], cursor.getDouble(2));
+        }
+        cursor.close();
+    }
+}
@@ -512,4 +512,31 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // A row missing a NOT NULL column is skipped, and the rest of the batch is still inserted
+    public void testBulkInsertSkipsInvalidRows() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        bulkInsertContentValues[1].remove(WeatherEntry.COLUMN_SHORT_DESC);
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                bulkInsertContentValues);
+        assertEquals("Error: Only the invalid row should have been skipped",
+                BULK_INSERT_RECORDS_TO_INSERT - 1, insertCount);
+
+        WeatherBatch batch = new WeatherBatch(2);
+        long date = TestUtilities.TEST_DATE + BULK_INSERT_RECORDS_TO_INSERT * 1000 * 60 * 60 * 24L;
+        batch.add(locationRowId, date, null, 321, 65, 75, 1.2, 1.3, 5.5, 1.1);
+        batch.add(locationRowId, date + 1000 * 60 * 60 * 24L, "Asteroids", 321, 65, 75,
+                1.2, 1.3, 5.5, 1.1);
+        assertEquals("Error: Only the invalid row of the batch should have been skipped",
+                1, batch.insert(mContext.getContentResolver()));
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+    }
 }
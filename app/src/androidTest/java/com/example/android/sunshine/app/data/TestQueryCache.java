@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+
+/*
+    Checks that the provider answers repeated forecast queries from its cache, and that every
+    kind of write drops exactly the cached results it made stale.
+ */
+public class TestQueryCache extends AndroidTestCase {
+
+    private static final String OTHER_LOCATION = "94043";
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private WeatherQueryCache mQueryCache;
+    private long mLocationRowId;
+    private long mOtherLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        mQueryCache = ((WeatherProvider) client.getLocalContentProvider()).getQueryCache();
+        client.release();
+
+        deleteAllRecords();
+        mLocationRowId = insertLocation(TestUtilities.createNorthPoleLocationValues());
+        ContentValues otherLocationValues = TestUtilities.createNorthPoleLocationValues();
+        otherLocationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, OTHER_LOCATION);
+        mOtherLocationRowId = insertLocation(otherLocationValues);
+
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(mLocationRowId));
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(mOtherLocationRowId));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private long insertLocation(ContentValues values) {
+        return ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values));
+    }
+
+    public void testRepeatedQueriesAreCached() {
+        if (mQueryCache == null) {
+            // Not cached on this platform
+            return;
+        }
+        Uri uri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        ContentValues expectedValues = TestUtilities.createWeatherValues(mLocationRowId);
+        int misses = mQueryCache.getMissCount();
+        int hits = mQueryCache.getHitCount();
+
+        for (int i = 0; i < 3; i++) {
+            TestUtilities.validateCursor("testRepeatedQueriesAreCached. Error on query " + i,
+                    query(uri), expectedValues);
+        }
+        assertEquals("Error: Only the first query should have gone to the database",
+                misses + 1, mQueryCache.getMissCount());
+        assertEquals(hits + 2, mQueryCache.getHitCount());
+
+        // A different day of the same location is a different query
+        query(WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE)).close();
+        assertEquals(misses + 2, mQueryCache.getMissCount());
+    }
+
+    public void testInsertInvalidatesItsLocationOnly() {
+        if (mQueryCache == null) {
+            return;
+        }
+        Uri uri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        Uri otherUri = WeatherEntry.buildWeatherLocation(OTHER_LOCATION);
+        assertEquals(1, getCount(uri));
+        assertEquals(1, getCount(otherUri));
+
+        ContentValues weatherValues = TestUtilities.createWeatherValues(mLocationRowId);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + DAY_IN_MILLIS);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        int misses = mQueryCache.getMissCount();
+        assertEquals("Error: Query didn't see the inserted day", 2, getCount(uri));
+        assertEquals(misses + 1, mQueryCache.getMissCount());
+        assertEquals(1, getCount(otherUri));
+        assertEquals("Error: The other location's result should still be cached",
+                misses + 1, mQueryCache.getMissCount());
+    }
+
+    public void testBulkInsertInvalidates() {
+        if (mQueryCache == null) {
+            return;
+        }
+        Uri uri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        assertEquals(1, getCount(uri));
+
+        WeatherBatch batch = new WeatherBatch(2);
+        for (int i = 1; i <= 2; i++) {
+            batch.add(mLocationRowId, TestUtilities.TEST_DATE + i * DAY_IN_MILLIS, "Asteroids",
+                    321, 65, 75, 1.2, 1.3, 5.5, 1.1);
+        }
+        batch.insert(mContext.getContentResolver());
+        assertEquals(3, getCount(uri));
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{createWeatherValues(mLocationRowId, 3)});
+        assertEquals(4, getCount(uri));
+    }
+
+    public void testUpdateAndDeleteInvalidate() throws Exception {
+        if (mQueryCache == null) {
+            return;
+        }
+        Uri uri = WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+        assertEquals(75, getMaxTemp(uri), 0);
+
+        // The way the sync writes a changed day
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newUpdate(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                        WeatherEntry.COLUMN_DATE + " = ?", new String[]{
+                        Long.toString(mLocationRowId), Long.toString(TestUtilities.TEST_DATE)})
+                .withValue(WeatherEntry.COLUMN_MAX_TEMP, 80)
+                .build());
+        mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        assertEquals("Error: Query didn't see the update", 80, getMaxTemp(uri), 0);
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(mLocationRowId)});
+        assertEquals("Error: Query didn't see the delete", 0, getCount(uri));
+    }
+
+    public void testLocationChangeInvalidates() {
+        if (mQueryCache == null) {
+            return;
+        }
+        Uri uri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        assertEquals(1, getCount(uri));
+
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, "99706");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, values,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(mLocationRowId)});
+        assertEquals("Error: Query still found the renamed location", 0, getCount(uri));
+    }
+
+    private ContentValues createWeatherValues(long locationRowId, int day) {
+        ContentValues values = TestUtilities.createWeatherValues(locationRowId);
+        values.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + day * DAY_IN_MILLIS);
+        return values;
+    }
+
+    private Cursor query(Uri uri) {
+        return mContext.getContentResolver().query(uri, null, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    private int getCount(Uri uri) {
+        Cursor cursor = query(uri);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private double getMaxTemp(Uri uri) {
+        Cursor cursor = query(uri);
+        assertTrue("Error: No weather for " + uri, cursor.moveToFirst());
+        double maxTemp = cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP));
+        cursor.close();
+        return maxTemp;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+    Runs EXPLAIN QUERY PLAN over the queries behind the provider's URIs, and the ones the sync
+    adapter runs, and fails if any of them has to scan a whole table.
+ */
+public class TestQueryPlans extends AndroidTestCase {
+
+    // How the forecast list and the widgets order their days.  Include it, since a sort can
+    // change which index the planner picks.
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = new WeatherDbHelper(mContext).getReadableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    // weather/*
+    public void testWeatherWithLocation() {
+        assertIndexed(WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                WeatherProvider.sLocationSettingSelection, null, null, SORT_ORDER, null),
+                TestUtilities.TEST_LOCATION);
+    }
+
+    // weather/*?date=
+    public void testWeatherWithLocationAndStartDate() {
+        assertIndexed(WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                WeatherProvider.sLocationSettingWithStartDateSelection, null, null, SORT_ORDER,
+                null),
+                TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE));
+    }
+
+    // weather/*/#
+    public void testWeatherWithLocationAndDate() {
+        assertIndexed(WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                WeatherProvider.sLocationSettingAndDaySelection, null, null, null, null),
+                TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE));
+    }
+
+    // location, looked up by setting
+    public void testLocationBySetting() {
+        assertIndexed("SELECT " + LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME +
+                " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                TestUtilities.TEST_LOCATION);
+    }
+
+    // weather, a location's stored days as read by the sync before it writes
+    public void testWeatherByLocationIdAndStartDate() {
+        assertIndexed("SELECT * FROM " + WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                WeatherEntry.COLUMN_DATE + " >= ?",
+                "1", Long.toString(TestUtilities.TEST_DATE));
+    }
+
+    // weather, the sync's deletion of old days
+    public void testDeleteOldWeather() {
+        assertIndexed("DELETE FROM " + WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherEntry.COLUMN_DATE + " <= ?",
+                Long.toString(TestUtilities.TEST_DATE));
+    }
+
+    private void assertIndexed(String sql, String... selectionArgs) {
+        List<String> plan = explainQueryPlan(sql, selectionArgs);
+        assertFalse("Error: Empty query plan for " + sql, plan.isEmpty());
+        for (String step : plan) {
+            // "SCAN TABLE weather" on older SQLite, "SCAN weather" on newer versions, and
+            // "SCAN ... USING COVERING INDEX" is a full pass over an index
+            assertFalse("Error: Full scan in the plan " + plan + " for " + sql,
+                    step.toUpperCase(Locale.US).startsWith("SCAN"));
+        }
+    }
+
+    private List<String> explainQueryPlan(String sql, String[] selectionArgs) {
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        List<String> plan = new ArrayList<String>();
+        int detailIndex = cursor.getColumnIndexOrThrow("detail");
+        while (cursor.moveToNext()) {
+            plan.add(cursor.getString(detailIndex));
+        }
+        cursor.close();
+        return plan;
+    }
+}
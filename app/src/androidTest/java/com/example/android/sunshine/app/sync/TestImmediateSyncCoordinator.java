@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+/*
+    Checks which requests for an immediate sync are passed on and which are folded into a sync
+    that is already on its way or has just finished.
+ */
+public class TestImmediateSyncCoordinator extends AndroidTestCase {
+
+    private static final String LOCATION = "99705";
+    private static final String OTHER_LOCATION = "94043";
+    private static final long FRESHNESS_MILLIS = 1000 * 60;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ImmediateSyncCoordinator.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ImmediateSyncCoordinator.reset();
+        super.tearDown();
+    }
+
+    public void testRequestsForSyncOnItsWayAreMerged() {
+        assertTrue(ImmediateSyncCoordinator.shouldRequest(LOCATION, FRESHNESS_MILLIS));
+        assertFalse("Error: A second request should share the sync on its way",
+                ImmediateSyncCoordinator.shouldRequest(LOCATION, FRESHNESS_MILLIS));
+        assertTrue("Error: A request for another location needs its own sync",
+                ImmediateSyncCoordinator.shouldRequest(OTHER_LOCATION, FRESHNESS_MILLIS));
+    }
+
+    public void testRequestsDuringRunningSyncAreMerged() {
+        ImmediateSyncCoordinator.onSyncStarted(LOCATION);
+        assertFalse(ImmediateSyncCoordinator.shouldRequest(LOCATION, 0));
+    }
+
+    public void testFreshSyncIsNotRepeated() {
+        assertTrue(ImmediateSyncCoordinator.shouldRequest(LOCATION, FRESHNESS_MILLIS));
+        ImmediateSyncCoordinator.onSyncStarted(LOCATION);
+        ImmediateSyncCoordinator.onSyncFinished(LOCATION, true);
+
+        assertFalse("Error: A request right after a successful sync should be dropped",
+                ImmediateSyncCoordinator.shouldRequest(LOCATION, FRESHNESS_MILLIS));
+        assertTrue("Error: Without a freshness window the request should go through",
+                ImmediateSyncCoordinator.shouldRequest(LOCATION, 0));
+    }
+
+    public void testFailedSyncIsRepeated() {
+        assertTrue(ImmediateSyncCoordinator.shouldRequest(LOCATION, FRESHNESS_MILLIS));
+        ImmediateSyncCoordinator.onSyncStarted(LOCATION);
+        ImmediateSyncCoordinator.onSyncFinished(LOCATION, false);
+
+        assertTrue("Error: A failed sync should not keep the next one from being requested",
+                ImmediateSyncCoordinator.shouldRequest(LOCATION, FRESHNESS_MILLIS));
+    }
+}
@@ -0,0 +1,537 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SyncResult;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.PreferenceSnapshot;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.example.android.sunshine.app.utils.TestHttpServer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+    Runs the sync adapter against a local stand-in for OpenWeatherMap.
+ */
+public class TestSyncAdapter extends AndroidTestCase {
+
+    static final String TEST_LOCATION = "99705";
+
+    static final String FORECAST_JSON = "{" +
+            "\"city\":{\"id\":5861897,\"name\":\"Fairbanks\"," +
+            "\"coord\":{\"lon\":-147.716,\"lat\":64.8378},\"country\":\"US\",\"population\":0}," +
+            "\"cod\":\"200\",\"message\":0.0122,\"cnt\":2,\"list\":[" +
+            "{\"dt\":1419105600,\"temp\":{\"day\":-5.1,\"min\":-9.2,\"max\":-4.4," +
+            "\"night\":-9.2,\"eve\":-6.5,\"morn\":-5.1},\"pressure\":1002.8,\"humidity\":88," +
+            "\"weather\":[{\"id\":600,\"main\":\"Snow\",\"description\":\"light snow\"," +
+            "\"icon\":\"13d\"}],\"speed\":1.2,\"deg\":210,\"clouds\":92,\"snow\":0.5}," +
+            "{\"dt\":1419192000,\"temp\":{\"day\":-12.3,\"min\":-16.0,\"max\":-10.1," +
+            "\"night\":-16.0,\"eve\":-13.1,\"morn\":-12.0},\"pressure\":1010.4,\"humidity\":80," +
+            "\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"sky is clear\"," +
+            "\"icon\":\"01d\"}],\"speed\":0.9,\"deg\":45,\"clouds\":0}" +
+            "]}";
+
+    static final String NOT_FOUND_JSON = "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+
+    private static final String ETAG = "\"forecast-v1\"";
+    private static final String LAST_MODIFIED = "Sat, 20 Dec 2014 00:00:00 GMT";
+
+    // Fast enough that the retry tests don't drag
+    private static final RetryPolicy TEST_RETRY_POLICY = new RetryPolicy(3, 10, 40);
+
+    private TestHttpServer mServer;
+    private SunshineSyncAdapter mSyncAdapter;
+    private String mSavedLocation;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String locationKey = mContext.getString(R.string.pref_location_key);
+        mSavedLocation = prefs.getString(locationKey, null);
+        prefs.edit().putString(locationKey, TEST_LOCATION).commit();
+        // The snapshot's own listener only hears of this later, on the main thread
+        PreferenceSnapshot.refresh(mContext);
+        new ForecastValidatorCache(mContext).clear(TEST_LOCATION);
+        new ForecastCircuitBreaker(mContext).reset();
+
+        mServer = new TestHttpServer();
+        mSyncAdapter = new SunshineSyncAdapter(mContext, false);
+        mSyncAdapter.setForecastBaseUrl(mServer.getUrl("/data/2.5/forecast/daily?"));
+        mSyncAdapter.setRetryPolicy(TEST_RETRY_POLICY);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        new ForecastValidatorCache(mContext).clear(TEST_LOCATION);
+        new ForecastCircuitBreaker(mContext).reset();
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String locationKey = mContext.getString(R.string.pref_location_key);
+        if (mSavedLocation == null) {
+            prefs.edit().remove(locationKey).commit();
+        } else {
+            prefs.edit().putString(locationKey, mSavedLocation).commit();
+        }
+        PreferenceSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    void performSync() {
+        performSync(new Bundle());
+    }
+
+    void performSync(Bundle extras) {
+        mSyncAdapter.onPerformSync(null, extras, mContext.getString(R.string.content_authority),
+                null, new SyncResult());
+    }
+
+    // Every REPLACE hands out a new AUTOINCREMENT id, so unchanged ids mean nothing was written
+    Set<Long> readWeatherIds() {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID}, null, null, null);
+        Set<Long> ids = new HashSet<Long>();
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getLong(0));
+        }
+        cursor.close();
+        return ids;
+    }
+
+    /**
+     * Records every change notification for the weather data.  Notifications from this process
+     * arrive in the order they were sent, so once a sentinel notification shows up everything
+     * the sync sent before it has been seen too.
+     */
+    static class RecordingObserver extends ContentObserver {
+        static final Uri SENTINEL_URI =
+                WeatherContract.BASE_CONTENT_URI.buildUpon().appendPath("sentinel").build();
+
+        final HandlerThread mHandlerThread;
+        final List<Uri> mChanges = new ArrayList<Uri>();
+        boolean mSentinelSeen;
+
+        RecordingObserver() {
+            this(startHandlerThread());
+        }
+
+        private RecordingObserver(HandlerThread handlerThread) {
+            super(new Handler(handlerThread.getLooper()));
+            mHandlerThread = handlerThread;
+        }
+
+        private static HandlerThread startHandlerThread() {
+            HandlerThread handlerThread = new HandlerThread("RecordingObserver");
+            handlerThread.start();
+            return handlerThread;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public synchronized void onChange(boolean selfChange, Uri uri) {
+            if (SENTINEL_URI.equals(uri)) {
+                mSentinelSeen = true;
+            } else {
+                mChanges.add(uri);
+            }
+        }
+
+        /**
+         * @return the notifications received before the sentinel
+         */
+        List<Uri> waitForSentinel(Context context) {
+            context.getContentResolver().notifyChange(SENTINEL_URI, null);
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    synchronized (RecordingObserver.this) {
+                        return mSentinelSeen;
+                    }
+                }
+            }.run();
+            synchronized (this) {
+                return new ArrayList<Uri>(mChanges);
+            }
+        }
+    }
+
+    static TestHttpServer.Response forecastResponse() {
+        return new TestHttpServer.Response(200, "OK", FORECAST_JSON)
+                .setHeader("ETag", ETAG)
+                .setHeader("Last-Modified", LAST_MODIFIED);
+    }
+
+    public void testNotModifiedSkipsWrites() {
+        mServer.enqueue(forecastResponse());
+        performSync();
+
+        assertEquals(1, mServer.getRequestCount());
+        assertNull("Error: First sync should not be conditional",
+                mServer.getRequestHeaders(0).get("if-none-match"));
+        Set<Long> idsAfterFirstSync = readWeatherIds();
+        assertEquals(2, idsAfterFirstSync.size());
+
+        mServer.enqueue(new TestHttpServer.Response(304, "Not Modified", "")
+                .setHeader("ETag", ETAG));
+        performSync();
+
+        assertEquals(2, mServer.getRequestCount());
+        Map<String, String> headers = mServer.getRequestHeaders(1);
+        assertEquals("Error: Second sync should send the stored ETag",
+                ETAG, headers.get("if-none-match"));
+        assertEquals("Error: Second sync should send the stored Last-Modified",
+                LAST_MODIFIED, headers.get("if-modified-since"));
+        assertEquals("Error: A 304 should not rewrite the forecast",
+                idsAfterFirstSync, readWeatherIds());
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, Utility.getLocationStatus(mContext));
+    }
+
+    public void testModifiedForecastIsStored() {
+        mServer.enqueue(forecastResponse());
+        performSync();
+        Set<Long> idsAfterFirstSync = readWeatherIds();
+
+        // Only tomorrow's high changes
+        mServer.enqueue(new TestHttpServer.Response(200, "OK",
+                FORECAST_JSON.replace("\"max\":-10.1", "\"max\":-8.0"))
+                .setHeader("ETag", "\"forecast-v2\""));
+        performSync();
+
+        assertEquals(ETAG, mServer.getRequestHeaders(1).get("if-none-match"));
+        assertEquals("Error: Changed days should be updated in place",
+                idsAfterFirstSync, readWeatherIds());
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_MAX_TEMP}, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToLast());
+        assertEquals("Error: A 200 should store the new forecast",
+                -8.0, cursor.getDouble(0));
+        cursor.close();
+
+        mServer.enqueue(new TestHttpServer.Response(304, "Not Modified", ""));
+        performSync();
+        assertEquals("Error: The validators of the latest forecast should be sent",
+                "\"forecast-v2\"", mServer.getRequestHeaders(2).get("if-none-match"));
+    }
+
+    public void testUnchangedForecastIsNotWritten() {
+        mServer.enqueue(forecastResponse());
+        performSync();
+
+        RecordingObserver observer = new RecordingObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.BASE_CONTENT_URI, true, observer);
+        try {
+            // Same forecast, new validators, so the server can't answer with a 304
+            mServer.enqueue(forecastResponse().setHeader("ETag", "\"forecast-v2\""));
+            performSync();
+
+            List<Uri> changes = observer.waitForSentinel(mContext);
+            assertTrue("Error: An unchanged forecast should not notify, got " + changes,
+                    changes.isEmpty());
+        } finally {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observer.mHandlerThread.quit();
+        }
+
+        mServer.enqueue(new TestHttpServer.Response(304, "Not Modified", ""));
+        performSync();
+        assertEquals("Error: The validators of an unchanged forecast should still be saved",
+                "\"forecast-v2\"", mServer.getRequestHeaders(2).get("if-none-match"));
+    }
+
+    public void testSyncNotifiesOncePerLocation() {
+        RecordingObserver observer = new RecordingObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.BASE_CONTENT_URI, true, observer);
+        try {
+            mServer.enqueue(forecastResponse());
+            performSync();
+
+            List<Uri> changes = observer.waitForSentinel(mContext);
+            assertEquals("Error: A new location's forecast should notify its location once, got "
+                    + changes, 2, changes.size());
+            assertTrue(changes.contains(LocationEntry.CONTENT_URI));
+            assertTrue(changes.contains(WeatherEntry.buildWeatherLocation(TEST_LOCATION)));
+        } finally {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observer.mHandlerThread.quit();
+        }
+    }
+
+    public void testChangedDayIsNotifiedAlone() {
+        mServer.enqueue(forecastResponse());
+        performSync();
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_DATE}, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToLast());
+        long tomorrow = cursor.getLong(0);
+        cursor.close();
+
+        RecordingObserver observer = new RecordingObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.BASE_CONTENT_URI, true, observer);
+        try {
+            // Only tomorrow's high changes
+            mServer.enqueue(new TestHttpServer.Response(200, "OK",
+                    FORECAST_JSON.replace("\"max\":-10.1", "\"max\":-8.0")));
+            performSync();
+
+            List<Uri> changes = observer.waitForSentinel(mContext);
+            assertEquals("Error: Only the changed day should be notified",
+                    Collections.singletonList(
+                            WeatherEntry.buildWeatherLocationWithDate(TEST_LOCATION, tomorrow)),
+                    changes);
+        } finally {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observer.mHandlerThread.quit();
+        }
+    }
+
+    public void testValidatorsNotSentWithoutStoredForecast() {
+        mServer.enqueue(forecastResponse());
+        performSync();
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+
+        mServer.enqueue(forecastResponse());
+        performSync();
+
+        assertNull("Error: Conditional request sent although the forecast is gone",
+                mServer.getRequestHeaders(1).get("if-none-match"));
+        assertEquals(2, readWeatherIds().size());
+    }
+
+    public void testValidatorsClearedByFailedSync() {
+        mServer.enqueue(forecastResponse());
+        performSync();
+
+        mServer.enqueue(new TestHttpServer.Response(200, "OK", NOT_FOUND_JSON));
+        performSync();
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID,
+                Utility.getLocationStatus(mContext));
+
+        mServer.enqueue(forecastResponse());
+        performSync();
+        assertNull("Error: Validators should not survive a failed sync",
+                mServer.getRequestHeaders(2).get("if-none-match"));
+    }
+
+    public void testEveryStoredLocationIsSynced() {
+        ContentValues otherLocation = new ContentValues();
+        otherLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, "94043");
+        otherLocation.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        otherLocation.put(LocationEntry.COLUMN_COORD_LAT, 37.4);
+        otherLocation.put(LocationEntry.COLUMN_COORD_LONG, -122.1);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, otherLocation);
+
+        mServer.enqueue(forecastResponse());
+        mServer.enqueue(forecastResponse());
+        performSync();
+
+        assertEquals("Error: Both locations should have been requested",
+                2, mServer.getRequestCount());
+        assertEquals("Error: Both forecasts should have been stored",
+                4, readWeatherIds().size());
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: Only the preferred location should have been added",
+                2, cursor.getCount());
+        cursor.close();
+        new ForecastValidatorCache(mContext).clear("94043");
+    }
+
+    public void testSlowFetchesOverlap() {
+        // No more locations than are fetched at once
+        String[] otherLocations = {"94043", "10001", "60601"};
+        for (String locationSetting : otherLocations) {
+            ContentValues location = new ContentValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+            location.put(LocationEntry.COLUMN_CITY_NAME, locationSetting);
+            location.put(LocationEntry.COLUMN_COORD_LAT, 37.4);
+            location.put(LocationEntry.COLUMN_COORD_LONG, -122.1);
+            mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location);
+        }
+        int locationCount = otherLocations.length + 1;
+        long delayMillis = 1000;
+        for (int i = 0; i < locationCount; i++) {
+            mServer.enqueue(forecastResponse().setDelay(delayMillis));
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        performSync();
+        long syncMillis = SystemClock.elapsedRealtime() - start;
+
+        assertEquals(locationCount, mServer.getRequestCount());
+        assertEquals(2 * locationCount, readWeatherIds().size());
+        // Fetched one after the other the sync would take at least locationCount * delayMillis
+        assertTrue("Error: " + locationCount + " fetches delayed " + delayMillis
+                        + "ms each took " + syncMillis + "ms",
+                syncMillis < 2 * delayMillis);
+        for (String locationSetting : otherLocations) {
+            new ForecastValidatorCache(mContext).clear(locationSetting);
+        }
+    }
+
+    static TestHttpServer.Response serverErrorResponse() {
+        return new TestHttpServer.Response(503, "Service Unavailable", "");
+    }
+
+    public void testServerErrorIsRetried() {
+        mServer.enqueue(serverErrorResponse());
+        mServer.enqueue(serverErrorResponse());
+        mServer.enqueue(forecastResponse());
+        performSync();
+
+        assertEquals("Error: Each server error should have been retried",
+                3, mServer.getRequestCount());
+        assertEquals(2, readWeatherIds().size());
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, Utility.getLocationStatus(mContext));
+    }
+
+    public void testRetriesAreBounded() {
+        for (int i = 0; i < 5; i++) {
+            mServer.enqueue(serverErrorResponse());
+        }
+        performSync();
+
+        assertEquals("Error: The sync should give up after the last retry",
+                1 + TEST_RETRY_POLICY.getMaxRetries(), mServer.getRequestCount());
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                Utility.getLocationStatus(mContext));
+    }
+
+    public void testClientErrorIsNotRetried() {
+        mServer.enqueue(new TestHttpServer.Response(404, "Not Found", NOT_FOUND_JSON));
+        performSync();
+
+        assertEquals("Error: A request the server turned down should not be retried",
+                1, mServer.getRequestCount());
+    }
+
+    public void testCircuitOpensAfterFailedSyncs() {
+        // A second location, which a probe leaves out
+        ContentValues otherLocation = new ContentValues();
+        otherLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, "94043");
+        otherLocation.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        otherLocation.put(LocationEntry.COLUMN_COORD_LAT, 37.4);
+        otherLocation.put(LocationEntry.COLUMN_COORD_LONG, -122.1);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, otherLocation);
+
+        int requestsPerSync = 2 * (1 + TEST_RETRY_POLICY.getMaxRetries());
+        for (int i = 0; i < ForecastCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            for (int j = 0; j < requestsPerSync; j++) {
+                mServer.enqueue(serverErrorResponse());
+            }
+            performSync();
+        }
+        int requestCount = ForecastCircuitBreaker.FAILURE_THRESHOLD * requestsPerSync;
+        assertEquals(requestCount, mServer.getRequestCount());
+
+        mServer.enqueue(forecastResponse());
+        performSync();
+        assertEquals("Error: An open circuit should not make any requests",
+                requestCount, mServer.getRequestCount());
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                Utility.getLocationStatus(mContext));
+
+        // Asking for a sync makes a single probe for the preferred location, which closes
+        // the circuit again
+        Bundle extras = new Bundle();
+        extras.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        performSync(extras);
+        assertEquals("Error: A probe should make a single request",
+                requestCount + 1, mServer.getRequestCount());
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, Utility.getLocationStatus(mContext));
+
+        mServer.enqueue(forecastResponse());
+        mServer.enqueue(forecastResponse());
+        performSync();
+        assertEquals("Error: A closed circuit should request every location again",
+                requestCount + 3, mServer.getRequestCount());
+        new ForecastValidatorCache(mContext).clear("94043");
+    }
+
+    public void testServerErrorIsNotNoResponse() {
+        ForecastFetcher.Result result = new ForecastFetcher.Result(TEST_LOCATION);
+        assertTrue(result.isNoResponse());
+        assertFalse(result.isServerError());
+
+        // An error from the server shows the device was online, so it always counts
+        result.responseCode = 503;
+        assertFalse(result.isNoResponse());
+        assertTrue(result.isServerError());
+
+        result.responseCode = 404;
+        assertFalse("Error: A request the server turned down isn't a server failure",
+                result.isServerFailure());
+    }
+
+    public void testCircuitCoolsDown() {
+        ForecastCircuitBreaker circuitBreaker = new ForecastCircuitBreaker(mContext);
+        long now = System.currentTimeMillis();
+        for (int i = 1; i < ForecastCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            assertEquals(0, circuitBreaker.recordFailure(now));
+            assertTrue(circuitBreaker.allowRequest(now));
+        }
+        long openUntil = circuitBreaker.recordFailure(now);
+        assertEquals(now + ForecastCircuitBreaker.MIN_OPEN_MILLIS, openUntil);
+        assertFalse(circuitBreaker.allowRequest(now));
+        assertTrue("Error: The circuit should let a probe through once cooled down",
+                circuitBreaker.allowRequest(openUntil));
+        assertTrue(circuitBreaker.isTripped());
+
+        assertEquals("Error: A failed probe should open the circuit for longer",
+                openUntil + 2 * ForecastCircuitBreaker.MIN_OPEN_MILLIS,
+                circuitBreaker.recordFailure(openUntil));
+
+        circuitBreaker.recordSuccess();
+        assertFalse(circuitBreaker.isTripped());
+        assertTrue(circuitBreaker.allowRequest(now));
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A very small HTTP/1.1 server that stands in for OpenWeatherMap in tests.  It answers every
+ * request with the next queued {@link Response} (or a 404 once the queue is empty), closes the
+ * connection afterwards, and records the headers of every request it has seen.  Each
+ * connection is served on its own thread, so delayed responses overlap the way a real
+ * server's would.
+ */
+public class TestHttpServer {
+
+    public static class Response {
+        final int mCode;
+        final String mReason;
+        final Map<String, String> mHeaders = new HashMap<String, String>();
+        final String mBody;
+        long mDelayMillis;
+
+        public Response(int code, String reason, String body) {
+            mCode = code;
+            mReason = reason;
+            mBody = body;
+        }
+
+        public Response setHeader(String name, String value) {
+            mHeaders.put(name, value);
+            return this;
+        }
+
+        /**
+         * Holds the response back for a while after the request has been read, like a slow
+         * server.
+         */
+        public Response setDelay(long delayMillis) {
+            mDelayMillis = delayMillis;
+            return this;
+        }
+    }
+
+    private final ServerSocket mServerSocket;
+    private final LinkedList<Response> mResponses = new LinkedList<Response>();
+    private final List<Map<String, String>> mRequests = new ArrayList<Map<String, String>>();
+    private final Thread mThread;
+
+    public TestHttpServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mServerSocket.isClosed()) {
+                    try {
+                        startServing(mServerSocket.accept());
+                    } catch (IOException e) {
+                        // Shut down; the loop ends once the socket is closed.
+                    }
+                }
+            }
+        }, "TestHttpServer");
+        mThread.start();
+    }
+
+    /**
+     * @return the base URL of the server, ready to have query parameters appended
+     */
+    public String getUrl(String path) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    public synchronized void enqueue(Response response) {
+        mResponses.add(response);
+    }
+
+    public synchronized int getRequestCount() {
+        return mRequests.size();
+    }
+
+    /**
+     * @return the headers of the given request, with lower case names
+     */
+    public synchronized Map<String, String> getRequestHeaders(int index) {
+        return mRequests.get(index);
+    }
+
+    public void shutdown() throws IOException {
+        mServerSocket.close();
+        try {
+            mThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startServing(final Socket socket) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    serve(socket);
+                } catch (IOException e) {
+                    // The client gave up
+                } finally {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // Nothing left to do with it
+                    }
+                }
+            }
+        }, "TestHttpServer connection").start();
+    }
+
+    private void serve(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        String requestLine = in.readLine();
+        if (requestLine == null) {
+            return;
+        }
+        Map<String, String> headers = new HashMap<String, String>();
+        String line;
+        while ((line = in.readLine()) != null && line.length() > 0) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                        line.substring(colon + 1).trim());
+            }
+        }
+
+        Response response;
+        synchronized (this) {
+            mRequests.add(headers);
+            response = mResponses.isEmpty()
+                    ? new Response(404, "Not Found", "")
+                    : mResponses.removeFirst();
+        }
+        if (response.mDelayMillis > 0) {
+            try {
+                Thread.sleep(response.mDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        byte[] body = response.mBody.getBytes("UTF-8");
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(response.mCode).append(' ').append(response.mReason)
+                .append("\r\n");
+        for (Map.Entry<String, String> header : response.mHeaders.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        // 304 responses never carry a body
+        if (response.mCode != 304) {
+            head.append("Content-Type: application/json\r\n");
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        head.append("Connection: close\r\n\r\n");
+
+        OutputStream out = socket.getOutputStream();
+        out.write(head.toString().getBytes("UTF-8"));
+        if (response.mCode != 304) {
+            out.write(body);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.support.v4.util.LongSparseArray;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Remembers the day labels {@link Utility} has formatted, by date and kind of label, so that
+ * binding the same fortnight of forecast again doesn't redo any date math.  Labels such as
+ * "Today" and "Tomorrow" depend on the current day, so everything is forgotten at local
+ * midnight, and whenever the time, time zone or locale change.
+ */
+final class DayLabels {
+
+    static final int FRIENDLY = 0;
+    static final int FRIENDLY_LONG_TODAY = 1;
+    static final int FULL_FRIENDLY = 2;
+    static final int DAY_NAME = 3;
+    static final int MONTH_DAY = 4;
+    private static final int KIND_COUNT = 5;
+
+    // Plenty for a fortnight of every kind; beyond that start again rather than grow
+    private static final int MAX_LABELS = 256;
+
+    private static final LongSparseArray<String> sLabels = new LongSparseArray<String>();
+    // Bumped whenever the labels are forgotten, so a label formatted before that isn't kept
+    private static int sGeneration;
+    private static long sValidUntil;
+    private static Locale sLocale;
+    private static BroadcastReceiver sReceiver;
+
+    private DayLabels() {
+    }
+
+    /**
+     * @return the label, or null if it has to be formatted
+     */
+    static synchronized String get(Context context, long dateInMillis, int kind) {
+        long now = System.currentTimeMillis();
+        if (now >= sValidUntil || Locale.getDefault() != sLocale) {
+            reset(context, now);
+        }
+        return sLabels.get(getKey(dateInMillis, kind));
+    }
+
+    /**
+     * @return what to pass to {@link #put} for a label formatted from now on
+     */
+    static synchronized int getGeneration() {
+        return sGeneration;
+    }
+
+    static synchronized void put(int generation, long dateInMillis, int kind, String label) {
+        if (generation != sGeneration) {
+            // Formatted for a day, zone or locale that no longer applies
+            return;
+        }
+        if (sLabels.size() >= MAX_LABELS) {
+            sLabels.clear();
+        }
+        sLabels.put(getKey(dateInMillis, kind), label);
+    }
+
+    static synchronized void invalidate() {
+        sValidUntil = 0;
+    }
+
+    private static long getKey(long dateInMillis, int kind) {
+        return dateInMillis * KIND_COUNT + kind;
+    }
+
+    private static void reset(Context context, long now) {
+        sLabels.clear();
+        sGeneration++;
+        sLocale = Locale.getDefault();
+
+        Calendar midnight = Calendar.getInstance();
+        midnight.setTimeInMillis(now);
+        midnight.set(Calendar.HOUR_OF_DAY, 0);
+        midnight.set(Calendar.MINUTE, 0);
+        midnight.set(Calendar.SECOND, 0);
+        midnight.set(Calendar.MILLISECOND, 0);
+        midnight.add(Calendar.DAY_OF_MONTH, 1);
+        sValidUntil = midnight.getTimeInMillis();
+
+        if (sReceiver == null) {
+            Context appContext = context.getApplicationContext();
+            if (appContext != null) {
+                sReceiver = new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        invalidate();
+                    }
+                };
+                IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+                filter.addAction(Intent.ACTION_TIME_CHANGED);
+                filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+                appContext.registerReceiver(sReceiver, filter);
+            }
+        }
+    }
+}
@@ -27,11 +27,15 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Collections;
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * The rows are bound from the {@link ForecastItem}s that {@link ForecastLoader} has already
+ * formatted, so binding doesn't read preferences or format anything.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -42,18 +46,12 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    private List<ForecastItem> mItems = Collections.emptyList();
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
 
-    public interface SendTempData {
-        /**
-         * DetailFragmentCallback for when an item has been selected.
-         */
-        public void getData(String lowTemp,String highTemp,int imgId);
-    }
-
     /**
      * Cache of the children views for a forecast list item.
      */
@@ -77,9 +75,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mItems.get(adapterPosition).date, this);
             mICM.onClick(this);
         }
     }
@@ -92,6 +88,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Has to be set before ItemChoiceManager starts observing
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
 
@@ -130,72 +128,47 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-
-       // System.out.println("Inside on View Bind Holder*************");
-
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        ForecastItem item = mItems.get(position);
         int defaultImage;
-        boolean useLongToday;
+        String dateText;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                defaultImage = item.artResource;
+                dateText = item.todayDateText;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                defaultImage = item.iconResource;
+                dateText = item.dateText;
         }
-       // System.out.println("Inside on View Bind Holder***wqwdwdwdwdwd**********");
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( item.artUrl == null ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(item.artUrl)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
-        //System.out.println("Inside on View Bind Holder22222222*************");
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+        // Named by date rather than position, since rows can move without being bound again
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + item.date);
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        forecastAdapterViewHolder.mDateView.setText(dateText);
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
-        //System.out.println("Inside on View Bind Holder**444444444**********");
+        forecastAdapterViewHolder.mDescriptionView.setText(item.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(item.descriptionA11y);
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
-
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
-        if(position==0)
-        ((SendTempData) mContext).getData(highString,lowString,defaultImage);
-        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
-
-
+        forecastAdapterViewHolder.mHighTempView.setText(item.highText);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(item.highA11y);
 
+        forecastAdapterViewHolder.mLowTempView.setText(item.lowText);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(item.lowA11y);
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -219,15 +192,34 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        return mItems.get(position).id;
+    }
+
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mItems.size();
     }
 
     public void swapCursor(Cursor newCursor) {
         mCursor = newCursor;
-        notifyDataSetChanged();
+        if (newCursor instanceof ForecastLoader.ForecastCursor) {
+            ForecastDiff diff = ((ForecastLoader.ForecastCursor) newCursor).getDiff();
+            if (diff.getOldItems() == mItems) {
+                // The loader worked out the changes from what is shown now, so only the rows
+                // that actually changed are bound again
+                mItems = diff.getNewItems();
+                diff.dispatchTo(this);
+            } else {
+                mItems = diff.getNewItems();
+                notifyDataSetChanged();
+            }
+        } else {
+            // Not from ForecastLoader, so the rows have to be formatted here
+            mItems = ForecastItem.fromCursor(mContext, newCursor);
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
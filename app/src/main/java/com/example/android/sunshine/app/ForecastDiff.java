@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The changes that turn one list of {@link ForecastItem}s into another, as RecyclerView
+ * insert, remove and change notifications.  Both lists are in date order, as the forecast is
+ * queried, so a single merge pass over them finds every change.  A row is the same row in both
+ * lists when it has the same weather _ID and date; it is changed when anything it shows
+ * differs.
+ */
+public class ForecastDiff {
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int CHANGE = 2;
+
+    private final List<ForecastItem> mOldItems;
+    private final List<ForecastItem> mNewItems;
+    // Runs of operations as (type, position, count) triples, in the order they must be applied
+    private int[] mOperations = new int[3 * 4];
+    private int mOperationCount;
+
+    private ForecastDiff(List<ForecastItem> oldItems, List<ForecastItem> newItems) {
+        mOldItems = oldItems;
+        mNewItems = newItems;
+    }
+
+    /**
+     * Works out the changes between two item lists.  Meant for a background thread, as it
+     * compares every row.
+     */
+    public static ForecastDiff compute(List<ForecastItem> oldItems, List<ForecastItem> newItems) {
+        ForecastDiff diff = new ForecastDiff(oldItems, newItems);
+        int oldIndex = 0;
+        int newIndex = 0;
+        // Where the next operation applies, in the list as the earlier operations leave it
+        int position = 0;
+        while (oldIndex < oldItems.size() || newIndex < newItems.size()) {
+            ForecastItem oldItem = oldIndex < oldItems.size() ? oldItems.get(oldIndex) : null;
+            ForecastItem newItem = newIndex < newItems.size() ? newItems.get(newIndex) : null;
+            if (newItem == null || (oldItem != null && oldItem.date < newItem.date)) {
+                diff.add(REMOVE, position);
+                oldIndex++;
+            } else if (oldItem == null || newItem.date < oldItem.date) {
+                diff.add(INSERT, position);
+                position++;
+                newIndex++;
+            } else if (oldItem.id != newItem.id) {
+                // Same day but a different row, such as another location's
+                diff.add(REMOVE, position);
+                diff.add(INSERT, position);
+                position++;
+                oldIndex++;
+                newIndex++;
+            } else {
+                // A row moving into or out of first place also changes, as the first row can
+                // have the larger "today" layout
+                if (!oldItem.hasSameContent(newItem) || (oldIndex == 0) != (newIndex == 0)) {
+                    diff.add(CHANGE, position);
+                }
+                position++;
+                oldIndex++;
+                newIndex++;
+            }
+        }
+        return diff;
+    }
+
+    private void add(int type, int position) {
+        if (mOperationCount > 0) {
+            int last = 3 * (mOperationCount - 1);
+            int lastType = mOperations[last];
+            int lastPosition = mOperations[last + 1];
+            int lastCount = mOperations[last + 2];
+            // Extend the last run where it's the same operation on the neighbouring row
+            if (type == lastType && ((type == REMOVE && position == lastPosition)
+                    || (type != REMOVE && position == lastPosition + lastCount))) {
+                mOperations[last + 2]++;
+                return;
+            }
+        }
+        if (3 * (mOperationCount + 1) > mOperations.length) {
+            mOperations = Arrays.copyOf(mOperations, mOperations.length * 2);
+        }
+        int next = 3 * mOperationCount;
+        mOperations[next] = type;
+        mOperations[next + 1] = position;
+        mOperations[next + 2] = 1;
+        mOperationCount++;
+    }
+
+    public List<ForecastItem> getOldItems() {
+        return mOldItems;
+    }
+
+    public List<ForecastItem> getNewItems() {
+        return mNewItems;
+    }
+
+    /**
+     * @return true if the two lists show exactly the same thing
+     */
+    public boolean isEmpty() {
+        return mOperationCount == 0;
+    }
+
+    /**
+     * Tells the adapter about each change, once it is showing the new items.
+     */
+    public void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int i = 0; i < mOperationCount; i++) {
+            int type = mOperations[3 * i];
+            int position = mOperations[3 * i + 1];
+            int count = mOperations[3 * i + 2];
+            switch (type) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(position, count);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One row of the forecast list, with everything it shows already formatted, so that binding
+ * it is only a matter of setting text and images.  Built by {@link ForecastLoader} on the
+ * loader's thread.
+ */
+public class ForecastItem {
+    public final long id;
+    public final long date;
+    public final int weatherId;
+
+    // As shown in the list, and in the larger "today" item at the top of it
+    public final String dateText;
+    public final String todayDateText;
+    public final int iconResource;
+    public final int artResource;
+    // null when the bundled graphics are being used
+    public final String artUrl;
+
+    public final String description;
+    public final String descriptionA11y;
+    public final String highText;
+    public final String highA11y;
+    public final String lowText;
+    public final String lowA11y;
+
+    private ForecastItem(Context context, Cursor cursor, boolean first, boolean localGraphics) {
+        id = cursor.getLong(ForecastFragment.COL_WEATHER_ID);
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        dateText = Utility.getFriendlyDayString(context, date, false);
+        // Only the first item can be shown as today
+        todayDateText = first ? Utility.getFriendlyDayString(context, date, true) : dateText;
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionA11y = context.getString(R.string.a11y_forecast, description);
+        highText = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+        highA11y = context.getString(R.string.a11y_high_temp, highText);
+        lowText = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+        lowA11y = context.getString(R.string.a11y_low_temp, lowText);
+    }
+
+    /**
+     * @return true if this row would show exactly what the other one does
+     */
+    public boolean hasSameContent(ForecastItem other) {
+        return date == other.date
+                && iconResource == other.iconResource
+                && artResource == other.artResource
+                && TextUtils.equals(artUrl, other.artUrl)
+                && TextUtils.equals(dateText, other.dateText)
+                && TextUtils.equals(todayDateText, other.todayDateText)
+                && TextUtils.equals(description, other.description)
+                && TextUtils.equals(descriptionA11y, other.descriptionA11y)
+                && TextUtils.equals(highText, other.highText)
+                && TextUtils.equals(highA11y, other.highA11y)
+                && TextUtils.equals(lowText, other.lowText)
+                && TextUtils.equals(lowA11y, other.lowA11y);
+    }
+
+    /**
+     * Formats every row of a forecast cursor, queried with ForecastFragment's projection.
+     * This reads the preferences and does all the formatting, so keep it off the main thread.
+     *
+     * @return an unmodifiable list, in the cursor's order
+     */
+    public static List<ForecastItem> fromCursor(Context context, Cursor cursor) {
+        if (cursor == null || cursor.getCount() == 0) {
+            return Collections.emptyList();
+        }
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        List<ForecastItem> items = new ArrayList<ForecastItem>(cursor.getCount());
+        for (cursor.moveToPosition(-1); cursor.moveToNext(); ) {
+            items.add(new ForecastItem(context, cursor, cursor.isFirst(), localGraphics));
+        }
+        return Collections.unmodifiableList(items);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link CursorLoader} for the forecast list, which also formats each row into a
+ * {@link ForecastItem} while it is still on the loader's thread, and works out how they differ
+ * from the items of its previous load.  The cursor it delivers is a {@link ForecastCursor}
+ * carrying both.
+ */
+public class ForecastLoader extends CursorLoader {
+
+    // Only used on the loader's thread
+    private List<ForecastItem> mLastItems = Collections.emptyList();
+
+    public ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                          String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        List<ForecastItem> items = ForecastItem.fromCursor(getContext(), cursor);
+        ForecastDiff diff = ForecastDiff.compute(mLastItems, items);
+        mLastItems = items;
+        return new ForecastCursor(cursor, diff);
+    }
+
+    /**
+     * The forecast cursor, together with its rows as they are shown and what changed since the
+     * loader's previous cursor.
+     */
+    public static class ForecastCursor extends CursorWrapper {
+        private final ForecastDiff mDiff;
+
+        ForecastCursor(Cursor cursor, ForecastDiff diff) {
+            super(cursor);
+            mDiff = diff;
+        }
+
+        public List<ForecastItem> getItems() {
+            return mDiff.getNewItems();
+        }
+
+        /**
+         * @return the changes from the items of the loader's previous cursor to these
+         */
+        public ForecastDiff getDiff() {
+            return mDiff;
+        }
+    }
+}
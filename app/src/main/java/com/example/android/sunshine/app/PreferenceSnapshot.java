@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+/**
+ * The settings that Sunshine reads while binding lists, building widgets and syncing, read
+ * once into an immutable snapshot.  There is one snapshot per process, rebuilt whenever the
+ * default SharedPreferences change, so reading a setting is a single volatile read instead of
+ * a preferences lookup and a few resource lookups for its key and default.
+ *
+ * The change listener is called on the main thread, some time after a background thread
+ * writes.  Code that writes one of these settings and then relies on reading it back should
+ * call {@link #refresh} itself, as {@link Utility#resetLocationStatus} does.
+ */
+public final class PreferenceSnapshot {
+
+    public final String location;
+    public final boolean metric;
+    // The art pack's URL format, or the "use local graphics" value
+    public final String artPack;
+    public final boolean localGraphics;
+    @SunshineSyncAdapter.LocationStatus
+    public final int locationStatus;
+
+    private static volatile PreferenceSnapshot sSnapshot;
+    // Held here because SharedPreferences only keeps a weak reference to its listeners
+    private static Listener sListener;
+
+    @SuppressWarnings("ResourceType")
+    private PreferenceSnapshot(Keys keys, SharedPreferences prefs) {
+        location = prefs.getString(keys.location, keys.locationDefault);
+        metric = prefs.getString(keys.units, keys.unitsMetric).equals(keys.unitsMetric);
+        artPack = prefs.getString(keys.artPack, keys.artPackSunshine);
+        localGraphics = artPack.equals(keys.artPackSunshine);
+        locationStatus = prefs.getInt(keys.locationStatus,
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+    }
+
+    /**
+     * @return the current settings
+     */
+    public static PreferenceSnapshot get(Context context) {
+        PreferenceSnapshot snapshot = sSnapshot;
+        if (snapshot == null) {
+            snapshot = refresh(context);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads the settings again, for when they have just been written and the change listener
+     * may not have run yet.
+     *
+     * @return the new snapshot
+     */
+    public static synchronized PreferenceSnapshot refresh(Context context) {
+        if (sListener == null) {
+            Context appContext = context.getApplicationContext();
+            sListener = new Listener(appContext != null ? appContext : context);
+            sListener.prefs.registerOnSharedPreferenceChangeListener(sListener);
+        }
+        PreferenceSnapshot snapshot = new PreferenceSnapshot(sListener.keys, sListener.prefs);
+        sSnapshot = snapshot;
+        return snapshot;
+    }
+
+    // The preference keys and defaults, looked up once
+    private static class Keys {
+        final String location;
+        final String locationDefault;
+        final String units;
+        final String unitsMetric;
+        final String artPack;
+        final String artPackSunshine;
+        final String locationStatus;
+
+        Keys(Context context) {
+            location = context.getString(R.string.pref_location_key);
+            locationDefault = context.getString(R.string.pref_location_default);
+            units = context.getString(R.string.pref_units_key);
+            unitsMetric = context.getString(R.string.pref_units_metric);
+            artPack = context.getString(R.string.pref_art_pack_key);
+            artPackSunshine = context.getString(R.string.pref_art_pack_sunshine);
+            locationStatus = context.getString(R.string.pref_location_status_key);
+        }
+
+        boolean contains(String key) {
+            return location.equals(key) || units.equals(key) || artPack.equals(key)
+                    || locationStatus.equals(key);
+        }
+    }
+
+    private static class Listener implements SharedPreferences.OnSharedPreferenceChangeListener {
+        final Keys keys;
+        final SharedPreferences prefs;
+
+        Listener(Context context) {
+            keys = new Keys(context);
+            prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            if (keys.contains(key)) {
+                synchronized (PreferenceSnapshot.class) {
+                    sSnapshot = new PreferenceSnapshot(keys, prefs);
+                }
+            }
+        }
+    }
+}
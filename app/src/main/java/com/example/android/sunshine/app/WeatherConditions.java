@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Locale;
+
+/**
+ * Everything Sunshine shows for an OpenWeatherMap weather condition, looked up in tables
+ * indexed by the condition id that are filled in once, so that a lookup is an array read and
+ * allocates nothing.  {@link Utility}'s per-condition helpers are built on this.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    private static final int MIN_ID = 200;
+    private static final int MAX_ID = 962;
+
+    // The kinds of weather there is art for.  Each id maps to one of these, or to NONE.
+    private static final int NONE = -1;
+    private static final int STORM = 0;
+    private static final int LIGHT_RAIN = 1;
+    private static final int RAIN = 2;
+    private static final int SNOW = 3;
+    private static final int FOG = 4;
+    private static final int CLEAR = 5;
+    private static final int LIGHT_CLOUDS = 6;
+    private static final int CLOUDS = 7;
+
+    // By kind: the bundled icon and art, and the name the art packs' URLs use
+    private static final int[] ICONS = {
+            R.drawable.ic_storm, R.drawable.ic_light_rain, R.drawable.ic_rain, R.drawable.ic_snow,
+            R.drawable.ic_fog, R.drawable.ic_clear, R.drawable.ic_light_clouds, R.drawable.ic_cloudy
+    };
+    private static final int[] ARTS = {
+            R.drawable.art_storm, R.drawable.art_light_rain, R.drawable.art_rain,
+            R.drawable.art_snow, R.drawable.art_fog, R.drawable.art_clear,
+            R.drawable.art_light_clouds, R.drawable.art_clouds
+    };
+    private static final String[] ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    // By id, offset by MIN_ID
+    private static final byte[] KINDS = new byte[MAX_ID - MIN_ID + 1];
+    private static final int[] STRINGS = new int[MAX_ID - MIN_ID + 1];
+    private static final String[] IMAGE_URLS = new String[MAX_ID - MIN_ID + 1];
+
+    static {
+        setKind(NONE, MIN_ID, MAX_ID);
+        // Where ranges overlap, the first one set wins, as it did when these were if-else chains
+        setKind(STORM, 200, 232);
+        setKind(LIGHT_RAIN, 300, 321);
+        setKind(RAIN, 500, 504);
+        setKind(SNOW, 511, 511);
+        setKind(RAIN, 520, 531);
+        setKind(SNOW, 600, 622);
+        setKind(FOG, 701, 761);
+        setKind(STORM, 781, 781);
+        setKind(CLEAR, 800, 800);
+        setKind(LIGHT_CLOUDS, 801, 801);
+        setKind(CLOUDS, 802, 804);
+
+        String[] kindImageUrls = {
+                "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+                "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+                "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+                "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+                "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+                "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+                "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+                "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+        };
+        for (int i = 0; i < KINDS.length; i++) {
+            if (KINDS[i] != NONE) {
+                IMAGE_URLS[i] = kindImageUrls[KINDS[i]];
+            }
+        }
+        // Squalls are stormy, but look nothing like a thunderstorm
+        IMAGE_URLS[781 - MIN_ID] =
+                "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+
+        for (int id = 200; id <= 232; id++) {
+            STRINGS[id - MIN_ID] = R.string.condition_2xx;
+        }
+        for (int id = 300; id <= 321; id++) {
+            STRINGS[id - MIN_ID] = R.string.condition_3xx;
+        }
+        setString(500, R.string.condition_500);
+        setString(501, R.string.condition_501);
+        setString(502, R.string.condition_502);
+        setString(503, R.string.condition_503);
+        setString(504, R.string.condition_504);
+        setString(511, R.string.condition_511);
+        setString(520, R.string.condition_520);
+        setString(531, R.string.condition_531);
+        setString(600, R.string.condition_600);
+        setString(601, R.string.condition_601);
+        setString(602, R.string.condition_602);
+        setString(611, R.string.condition_611);
+        setString(612, R.string.condition_612);
+        setString(615, R.string.condition_615);
+        setString(616, R.string.condition_616);
+        setString(620, R.string.condition_620);
+        setString(621, R.string.condition_621);
+        setString(622, R.string.condition_622);
+        setString(701, R.string.condition_701);
+        setString(711, R.string.condition_711);
+        setString(721, R.string.condition_721);
+        setString(731, R.string.condition_731);
+        setString(741, R.string.condition_741);
+        setString(751, R.string.condition_751);
+        setString(761, R.string.condition_761);
+        setString(762, R.string.condition_762);
+        setString(771, R.string.condition_771);
+        setString(781, R.string.condition_781);
+        setString(800, R.string.condition_800);
+        setString(801, R.string.condition_801);
+        setString(802, R.string.condition_802);
+        setString(803, R.string.condition_803);
+        setString(804, R.string.condition_804);
+        setString(900, R.string.condition_900);
+        setString(901, R.string.condition_901);
+        setString(902, R.string.condition_902);
+        setString(903, R.string.condition_903);
+        setString(904, R.string.condition_904);
+        setString(905, R.string.condition_905);
+        setString(906, R.string.condition_906);
+        setString(951, R.string.condition_951);
+        setString(952, R.string.condition_952);
+        setString(953, R.string.condition_953);
+        setString(954, R.string.condition_954);
+        setString(955, R.string.condition_955);
+        setString(956, R.string.condition_956);
+        setString(957, R.string.condition_957);
+        setString(958, R.string.condition_958);
+        setString(959, R.string.condition_959);
+        setString(960, R.string.condition_960);
+        setString(961, R.string.condition_961);
+        setString(962, R.string.condition_962);
+    }
+
+    // The art pack URLs, formatted for every kind, for the art pack they were last asked for
+    private static volatile ArtUrls sArtUrls;
+
+    private static final class ArtUrls {
+        final String format;
+        final String[] urls = new String[ART_NAMES.length];
+
+        ArtUrls(String format) {
+            this.format = format;
+            for (int kind = 0; kind < urls.length; kind++) {
+                urls[kind] = String.format(Locale.US, format, ART_NAMES[kind]);
+            }
+        }
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void setKind(int kind, int firstId, int lastId) {
+        for (int id = firstId; id <= lastId; id++) {
+            // Once an id has a kind it keeps it
+            if (kind == NONE || KINDS[id - MIN_ID] == NONE) {
+                KINDS[id - MIN_ID] = (byte) kind;
+            }
+        }
+    }
+
+    private static void setString(int id, int stringId) {
+        STRINGS[id - MIN_ID] = stringId;
+    }
+
+    private static int getKind(int weatherId) {
+        if (weatherId < MIN_ID || weatherId > MAX_ID) {
+            return NONE;
+        }
+        return KINDS[weatherId - MIN_ID];
+    }
+
+    /**
+     * @return the bundled icon for the condition, or -1 if there is none
+     */
+    public static int getIconResource(int weatherId) {
+        int kind = getKind(weatherId);
+        return kind != NONE ? ICONS[kind] : -1;
+    }
+
+    /**
+     * @return the bundled art for the condition, or -1 if there is none
+     */
+    public static int getArtResource(int weatherId) {
+        int kind = getKind(weatherId);
+        return kind != NONE ? ARTS[kind] : -1;
+    }
+
+    /**
+     * @return the string resource describing the condition, or 0 if there is none
+     */
+    public static int getStringResource(int weatherId) {
+        if (weatherId < MIN_ID || weatherId > MAX_ID) {
+            return 0;
+        }
+        return STRINGS[weatherId - MIN_ID];
+    }
+
+    /**
+     * @param artUrlFormat the art pack's URL, with a %s for the kind of weather
+     * @return the URL of the art pack's image for the condition, or null if there is none
+     */
+    public static String getArtUrl(String artUrlFormat, int weatherId) {
+        int kind = getKind(weatherId);
+        if (kind == NONE) {
+            return null;
+        }
+        ArtUrls artUrls = sArtUrls;
+        if (artUrls == null || !artUrls.format.equals(artUrlFormat)) {
+            // Only when the art pack changes
+            artUrls = new ArtUrls(artUrlFormat);
+            sArtUrls = artUrls;
+        }
+        return artUrls.urls[kind];
+    }
+
+    /**
+     * @return the URL of a photo for the condition, as used for the Muzei wallpaper, or null if
+     *         there is none
+     */
+    public static String getImageUrl(int weatherId) {
+        if (weatherId < MIN_ID || weatherId > MAX_ID) {
+            return null;
+        }
+        return IMAGE_URLS[weatherId - MIN_ID];
+    }
+}
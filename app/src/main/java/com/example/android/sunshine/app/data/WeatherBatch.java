@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/**
+ * A batch of weather rows held in parallel primitive arrays, one array per column.
+ *
+ * This is the cheap way to hand a lot of rows to {@link WeatherProvider}: nothing is boxed,
+ * and the provider binds the values straight into a single compiled insert statement.  Use
+ * {@link #insert(ContentResolver)} to write the batch.  Within the app's own process the
+ * arrays never get parceled; only a provider in another process would limit a batch to what
+ * fits in a binder transaction.
+ */
+public class WeatherBatch {
+
+    // Method name for ContentResolver.call()
+    static final String METHOD_BULK_INSERT = "bulk_insert_weather";
+
+    // Bundle keys, both for the batch and for the result of the call
+    private static final String KEY_SIZE = "size";
+    static final String KEY_INSERTED = "inserted";
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int mSize;
+    long[] mLocationIds;
+    long[] mDates;
+    String[] mShortDescs;
+    int[] mWeatherIds;
+    double[] mMinTemps;
+    double[] mMaxTemps;
+    double[] mHumidities;
+    double[] mPressures;
+    double[] mWindSpeeds;
+    double[] mDegrees;
+
+    public WeatherBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public WeatherBatch(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    /**
+     * Appends a row.  The date doesn't need to be normalized; the provider does that, just as
+     * it does for ContentValues.
+     */
+    public WeatherBatch add(long locationId, long date, String shortDesc, int weatherId,
+                            double minTemp, double maxTemp, double humidity, double pressure,
+                            double windSpeed, double degrees) {
+        if (mSize == mDates.length) {
+            grow();
+        }
+        mLocationIds[mSize] = locationId;
+        mDates[mSize] = date;
+        mShortDescs[mSize] = shortDesc;
+        mWeatherIds[mSize] = weatherId;
+        mMinTemps[mSize] = minTemp;
+        mMaxTemps[mSize] = maxTemp;
+        mHumidities[mSize] = humidity;
+        mPressures[mSize] = pressure;
+        mWindSpeeds[mSize] = windSpeed;
+        mDegrees[mSize] = degrees;
+        mSize++;
+        return this;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        // Drop the strings so that a reused batch doesn't keep them alive
+        Arrays.fill(mShortDescs, 0, mSize, null);
+        mSize = 0;
+    }
+
+    /**
+     * Writes the batch to the weather table.
+     *
+     * @return the number of rows inserted
+     */
+    public int insert(ContentResolver contentResolver) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return insertWithCall(contentResolver);
+        }
+        return contentResolver.bulkInsert(WeatherEntry.CONTENT_URI, toContentValues());
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private int insertWithCall(ContentResolver contentResolver) {
+        Bundle result = contentResolver.call(WeatherEntry.CONTENT_URI, METHOD_BULK_INSERT,
+                null, toBundle());
+        return result == null ? 0 : result.getInt(KEY_INSERTED);
+    }
+
+    /**
+     * @return the rows as ContentValues, for providers that only understand bulkInsert()
+     */
+    public ContentValues[] toContentValues() {
+        ContentValues[] values = new ContentValues[mSize];
+        for (int i = 0; i < mSize; i++) {
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, mLocationIds[i]);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, mDates[i]);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, mShortDescs[i]);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[i]);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[i]);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[i]);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, mHumidities[i]);
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, mPressures[i]);
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[i]);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, mDegrees[i]);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putInt(KEY_SIZE, mSize);
+        bundle.putLongArray(WeatherEntry.COLUMN_LOC_KEY, Arrays.copyOf(mLocationIds, mSize));
+        bundle.putLongArray(WeatherEntry.COLUMN_DATE, Arrays.copyOf(mDates, mSize));
+        bundle.putStringArray(WeatherEntry.COLUMN_SHORT_DESC, Arrays.copyOf(mShortDescs, mSize));
+        bundle.putIntArray(WeatherEntry.COLUMN_WEATHER_ID, Arrays.copyOf(mWeatherIds, mSize));
+        bundle.putDoubleArray(WeatherEntry.COLUMN_MIN_TEMP, Arrays.copyOf(mMinTemps, mSize));
+        bundle.putDoubleArray(WeatherEntry.COLUMN_MAX_TEMP, Arrays.copyOf(mMaxTemps, mSize));
+        bundle.putDoubleArray(WeatherEntry.COLUMN_HUMIDITY, Arrays.copyOf(mHumidities, mSize));
+        bundle.putDoubleArray(WeatherEntry.COLUMN_PRESSURE, Arrays.copyOf(mPressures, mSize));
+        bundle.putDoubleArray(WeatherEntry.COLUMN_WIND_SPEED, Arrays.copyOf(mWindSpeeds, mSize));
+        bundle.putDoubleArray(WeatherEntry.COLUMN_DEGREES, Arrays.copyOf(mDegrees, mSize));
+        return bundle;
+    }
+
+    static WeatherBatch fromBundle(Bundle bundle) {
+        WeatherBatch batch = new WeatherBatch(0);
+        batch.mSize = bundle.getInt(KEY_SIZE);
+        batch.mLocationIds = bundle.getLongArray(WeatherEntry.COLUMN_LOC_KEY);
+        batch.mDates = bundle.getLongArray(WeatherEntry.COLUMN_DATE);
+        batch.mShortDescs = bundle.getStringArray(WeatherEntry.COLUMN_SHORT_DESC);
+        batch.mWeatherIds = bundle.getIntArray(WeatherEntry.COLUMN_WEATHER_ID);
+        batch.mMinTemps = bundle.getDoubleArray(WeatherEntry.COLUMN_MIN_TEMP);
+        batch.mMaxTemps = bundle.getDoubleArray(WeatherEntry.COLUMN_MAX_TEMP);
+        batch.mHumidities = bundle.getDoubleArray(WeatherEntry.COLUMN_HUMIDITY);
+        batch.mPressures = bundle.getDoubleArray(WeatherEntry.COLUMN_PRESSURE);
+        batch.mWindSpeeds = bundle.getDoubleArray(WeatherEntry.COLUMN_WIND_SPEED);
+        batch.mDegrees = bundle.getDoubleArray(WeatherEntry.COLUMN_DEGREES);
+        if (batch.mLocationIds == null || batch.mDates == null || batch.mShortDescs == null
+                || batch.mWeatherIds == null || batch.mMinTemps == null || batch.mMaxTemps == null
+                || batch.mHumidities == null || batch.mPressures == null
+                || batch.mWindSpeeds == null || batch.mDegrees == null
+                || batch.mDates.length < batch.mSize) {
+            throw new IllegalArgumentException("Incomplete weather batch");
+        }
+        return batch;
+    }
+
+    private void allocate(int capacity) {
+        mLocationIds = new long[capacity];
+        mDates = new long[capacity];
+        mShortDescs = new String[capacity];
+        mWeatherIds = new int[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new double[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    private void grow() {
+        int capacity = mDates.length * 2;
+        mLocationIds = Arrays.copyOf(mLocationIds, capacity);
+        mDates = Arrays.copyOf(mDates, capacity);
+        mShortDescs = Arrays.copyOf(mShortDescs, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, capacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+}
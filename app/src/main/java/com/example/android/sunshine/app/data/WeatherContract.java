@@ -44,6 +44,10 @@ public class WeatherContract {
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
 
+    // Provider method, for ContentResolver.call(), that checkpoints the database's write-ahead
+    // log.  The sync adapter calls it once it has stored a sync.
+    public static final String METHOD_CHECKPOINT = "checkpoint";
+
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
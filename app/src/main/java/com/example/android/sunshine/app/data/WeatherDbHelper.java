@@ -15,9 +15,12 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -28,12 +31,57 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    static final int DATABASE_VERSION = 3;
 
     static final String DATABASE_NAME = "weather.db";
 
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date";
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // With write-ahead logging the UI, widgets and Muzei keep reading while a sync is
+        // writing, instead of waiting for its transaction to finish.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            enableWriteAheadLogging();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void enableWriteAheadLogging() {
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // Before Jelly Bean the helper can't do this itself, so switch each connection over
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
+    }
+
+    /**
+     * Copies whatever is in the write-ahead log back into the database, so that the log doesn't
+     * keep growing and readers don't have to search it.  This is a passive checkpoint: it
+     * doesn't wait for readers, and only gets as far as they allow.  SQLite also checkpoints on
+     * its own once the log passes the framework's auto-checkpoint size of 100 pages; this is
+     * for the end of each sync, when the app has just written everything it is going to write
+     * for a while.
+     */
+    static void checkpoint(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        // The pragma returns a row, so it has to be run as a query
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint", null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
     @Override
@@ -79,20 +127,123 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
                 WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
 
+        // Every weather query in the provider looks up a location first and then its days,
+        // mostly in date order.  The UNIQUE constraint's index leads with the date, so it can't
+        // serve those; this one can.  Lookups by location setting already use the index of the
+        // location table's UNIQUE constraint.
+        final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX = "CREATE INDEX " +
+                INDEX_WEATHER_LOCATION_DATE + " ON " + WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ");";
+
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
     }
 
+    /**
+     * Brings the database up to date one version at a time, keeping the stored locations and
+     * forecasts, so that an app update doesn't leave the user with an empty list until the
+     * next sync.  SQLiteOpenHelper runs all of this in a single transaction: either every step
+     * applies or the database stays at its old version.
+     *
+     * Each step only knows the schema of the version it starts from, so the steps never change
+     * once released.  To change the schema, bump DATABASE_VERSION, update onCreate() and add a
+     * step from the previous version.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        // Note that this only fires if you change the version number for your database.
-        // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
+        for (int version = oldVersion; version < newVersion; version++) {
+            switch (version) {
+                case 1:
+                    upgradeFromVersion1(sqLiteDatabase);
+                    break;
+                case 2:
+                    upgradeFromVersion2(sqLiteDatabase);
+                    break;
+                default:
+                    throw new IllegalStateException("No upgrade from database version " + version);
+            }
+        }
+    }
+
+    /**
+     * This database is only a cache for online data, so if an older version of the app finds a
+     * newer database, it discards it and starts over rather than refusing to open.
+     */
+    @Override
+    public void onDowngrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
+
+    /**
+     * Version 1 stored each day as "yyyyMMdd" text.  Version 2 stores the start of the day in
+     * milliseconds, which needs a new table, since SQLite can't change a column's type.
+     */
+    private static void upgradeFromVersion1(SQLiteDatabase db) {
+        // Days before today are never shown and the next sync would delete them anyway, so
+        // drop them first.  That keeps the copy below down to about two weeks per location,
+        // however much history built up.
+        db.execSQL("DELETE FROM " + WeatherEntry.TABLE_NAME + " WHERE " +
+                WeatherEntry.COLUMN_DATE + " < strftime('%Y%m%d', 'now', 'localtime')");
+
+        final String newTable = WeatherEntry.TABLE_NAME + "_v2";
+        db.execSQL("CREATE TABLE " + newTable + " (" +
+                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);");
+
+        // Dates are normalized to local midnight, the same as WeatherContract.normalizeDate()
+        final String columns = WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_HUMIDITY + ", " +
+                WeatherEntry.COLUMN_PRESSURE + ", " +
+                WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                WeatherEntry.COLUMN_DEGREES;
+        final String dateText = WeatherEntry.COLUMN_DATE;
+        db.execSQL("INSERT INTO " + newTable + " (" +
+                WeatherEntry._ID + ", " +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                columns + ") SELECT " +
+                WeatherEntry._ID + ", " +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                "CAST(strftime('%s', substr(" + dateText + ", 1, 4) || '-' || substr(" +
+                dateText + ", 5, 2) || '-' || substr(" + dateText + ", 7, 2), 'utc')" +
+                " AS INTEGER) * 1000, " +
+                columns + " FROM " + WeatherEntry.TABLE_NAME);
+
+        db.execSQL("DROP TABLE " + WeatherEntry.TABLE_NAME);
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + WeatherEntry.TABLE_NAME);
+    }
+
+    /**
+     * Version 3 adds the weather_location_date index.
+     */
+    private static void upgradeFromVersion2(SQLiteDatabase db) {
+        // As above, building the index only has to cover today onwards
+        db.execSQL("DELETE FROM " + WeatherEntry.TABLE_NAME + " WHERE " +
+                WeatherEntry.COLUMN_DATE + " < " +
+                WeatherContract.normalizeDate(System.currentTimeMillis()));
+        db.execSQL("CREATE INDEX " + INDEX_WEATHER_LOCATION_DATE + " ON " +
+                WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ");");
+    }
 }
@@ -17,25 +17,74 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // Column order of the statement insertWeather(SQLiteDatabase, WeatherBatch) binds
+    private static final String[] WEATHER_BATCH_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    // Forecast query results, or null where the platform can't take snapshots of them
+    private WeatherQueryCache mQueryCache;
+
+    /**
+     * What a write, or a whole batch of them, changed.  Acted on once it has committed: the
+     * cached results it made stale are dropped, and the URIs of what changed are notified.
+     */
+    private static final class PendingChanges {
+        // The changed days of each location setting, or null for any of its days
+        final Map<String, Set<Long>> weather = new HashMap<String, Set<Long>>();
+        boolean allWeather;
+        boolean locations;
+    }
+
+    // Set while applyBatch() runs on the current thread
+    private final ThreadLocal<PendingChanges> mPendingChanges = new ThreadLocal<PendingChanges>();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -52,18 +101,18 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
@@ -140,6 +189,9 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            mQueryCache = new WeatherQueryCache();
+        }
         return true;
     }
 
@@ -175,16 +227,33 @@ public class WeatherProvider extends ContentProvider {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+                WeatherQueryCache.Key key = getCacheKey(match, uri, projection, sortOrder);
+                retCursor = key != null ? mQueryCache.get(key) : null;
+                if (retCursor == null) {
+                    long generation = key != null ? mQueryCache.getGeneration() : 0;
+                    retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+                    if (key != null) {
+                        retCursor = mQueryCache.put(key, retCursor, generation);
+                    }
+                }
                 break;
             }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                WeatherQueryCache.Key key = getCacheKey(match, uri, projection, sortOrder);
+                retCursor = key != null ? mQueryCache.get(key) : null;
+                if (retCursor == null) {
+                    long generation = key != null ? mQueryCache.getGeneration() : 0;
+                    retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                    if (key != null) {
+                        retCursor = mQueryCache.put(key, retCursor, generation);
+                    }
+                }
                 break;
             }
             // "weather"
@@ -221,6 +290,24 @@ public class WeatherProvider extends ContentProvider {
         return retCursor;
     }
 
+    /**
+     * @return the key to cache the query under, or null if it should go straight to the
+     *         database
+     */
+    private WeatherQueryCache.Key getCacheKey(int match, Uri uri, String[] projection,
+                                              String sortOrder) {
+        if (mQueryCache == null || mPendingChanges.get() != null) {
+            // In the middle of a batch the cache doesn't know about the batch's writes yet
+            return null;
+        }
+        long date = match == WEATHER_WITH_LOCATION_AND_DATE
+                ? WeatherContract.WeatherEntry.getDateFromUri(uri)
+                : WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        return new WeatherQueryCache.Key(match,
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(uri), date, projection,
+                sortOrder);
+    }
+
     /*
         Student: Add the ability to insert Locations to the implementation of this function.
      */
@@ -229,6 +316,7 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         Uri returnUri;
+        PendingChanges pendingChanges = getPendingChanges();
 
         switch (match) {
             case WEATHER: {
@@ -238,6 +326,10 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                Map<Long, Set<Long>> days = new HashMap<Long, Set<Long>>();
+                addDay(days, values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                        values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+                weatherChanged(db, days, pendingChanges);
                 break;
             }
             case LOCATION: {
@@ -246,12 +338,16 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                pendingChanges.locations = true;
+                // There can't be weather for it yet, but its empty forecast may have been read
+                weatherChanged(db, Collections.singletonMap(_id, (Set<Long>) null),
+                        pendingChanges);
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        applyChanges(pendingChanges);
         return returnUri;
     }
 
@@ -260,24 +356,39 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsDeleted;
+        PendingChanges pendingChanges = getPendingChanges();
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+            case WEATHER: {
+                // Find the locations in the same transaction as the delete, so that they are
+                // still the ones it deletes from
+                db.beginTransaction();
+                try {
+                    Map<Long, Set<Long>> days = getWeatherDays(db, selection, selectionArgs);
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    if (rowsDeleted != 0) {
+                        weatherChanged(db, days, pendingChanges);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 break;
+            }
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    pendingChanges.locations = true;
+                    weatherChanged(db, null, pendingChanges);
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        // Because a null deletes all rows
-        if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-        }
+        applyChanges(pendingChanges);
         return rowsDeleted;
     }
 
@@ -295,23 +406,48 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsUpdated;
+        PendingChanges pendingChanges = getPendingChanges();
 
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                db.beginTransaction();
+                try {
+                    Map<Long, Set<Long>> days = getWeatherDays(db, selection, selectionArgs);
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    if (rowsUpdated != 0) {
+                        if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)
+                                || values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)) {
+                            // The rows moved, so count their old and new locations as changed
+                            // on every day
+                            for (Map.Entry<Long, Set<Long>> entry : days.entrySet()) {
+                                entry.setValue(null);
+                            }
+                            addDay(days,
+                                    values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                                    null);
+                        }
+                        weatherChanged(db, days, pendingChanges);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 break;
+            }
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (rowsUpdated != 0) {
+                    pendingChanges.locations = true;
+                    weatherChanged(db, null, pendingChanges);
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-        }
+        applyChanges(pendingChanges);
         return rowsUpdated;
     }
 
@@ -323,25 +459,387 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                PendingChanges pendingChanges = getPendingChanges();
                 try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
-                    }
+                    Map<Long, Set<Long>> days = new HashMap<Long, Set<Long>>();
+                    returnCount = insertWeather(db, values, days);
+                    weatherChanged(db, days, pendingChanges);
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                applyChanges(pendingChanges);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Inserts the rows with one compiled statement, for as long as consecutive rows have the
+     * same columns.  A row that breaks a constraint is skipped and not counted, as
+     * {@link SQLiteDatabase#insert} would, and the rest are still inserted.  Must be called
+     * inside a transaction.
+     */
+    private int insertWeather(SQLiteDatabase db, ContentValues[] values,
+                              Map<Long, Set<Long>> days) {
+        int returnCount = 0;
+        Time dayTime = new Time();
+        SQLiteStatement statement = null;
+        String[] columns = null;
+        try {
+            for (ContentValues value : values) {
+                if (columns == null || !hasColumns(value, columns)) {
+                    if (statement != null) {
+                        statement.close();
+                    }
+                    columns = value.keySet().toArray(new String[value.size()]);
+                    statement = db.compileStatement(
+                            buildInsert(WeatherContract.WeatherEntry.TABLE_NAME, columns));
+                }
+                statement.clearBindings();
+                Long locationId = null;
+                Long date = null;
+                for (int i = 0; i < columns.length; i++) {
+                    Object columnValue = value.get(columns[i]);
+                    if (WeatherContract.WeatherEntry.COLUMN_DATE.equals(columns[i])
+                            && columnValue instanceof Number) {
+                        // Same as normalizeDate(ContentValues), without a new Time per row.
+                        // The normalized date still goes back into the values, as callers
+                        // have always been able to rely on.
+                        date = normalizeDate(dayTime, ((Number) columnValue).longValue());
+                        value.put(columns[i], date);
+                        statement.bindLong(i + 1, date);
+                    } else {
+                        bindValue(statement, i + 1, columnValue);
+                        if (WeatherContract.WeatherEntry.COLUMN_LOC_KEY.equals(columns[i])
+                                && columnValue instanceof Number) {
+                            locationId = ((Number) columnValue).longValue();
+                        }
+                    }
+                }
+                if (!executeInsert(statement, value)) {
+                    continue;
+                }
+                returnCount++;
+                addDay(days, locationId, date);
+            }
+        } finally {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+        return returnCount;
+    }
+
+    /**
+     * Inserts a batch of weather rows, binding the values straight from its arrays.  Rows that
+     * break a constraint are skipped, as with the ContentValues.  Must be called inside a
+     * transaction.
+     */
+    private int insertWeather(SQLiteDatabase db, WeatherBatch batch, Map<Long, Set<Long>> days) {
+        int returnCount = 0;
+        Time dayTime = new Time();
+        SQLiteStatement statement = db.compileStatement(
+                buildInsert(WeatherContract.WeatherEntry.TABLE_NAME, WEATHER_BATCH_COLUMNS));
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                // Every column is bound on every row, so there's no need to clear the bindings
+                long date = normalizeDate(dayTime, batch.mDates[i]);
+                statement.bindLong(1, batch.mLocationIds[i]);
+                statement.bindLong(2, date);
+                if (batch.mShortDescs[i] == null) {
+                    statement.bindNull(3);
+                } else {
+                    statement.bindString(3, batch.mShortDescs[i]);
+                }
+                statement.bindLong(4, batch.mWeatherIds[i]);
+                statement.bindDouble(5, batch.mMinTemps[i]);
+                statement.bindDouble(6, batch.mMaxTemps[i]);
+                statement.bindDouble(7, batch.mHumidities[i]);
+                statement.bindDouble(8, batch.mPressures[i]);
+                statement.bindDouble(9, batch.mWindSpeeds[i]);
+                statement.bindDouble(10, batch.mDegrees[i]);
+                if (!executeInsert(statement, "row " + i + " of a batch")) {
+                    continue;
+                }
+                returnCount++;
+                addDay(days, batch.mLocationIds[i], date);
+            }
+        } finally {
+            statement.close();
+        }
+        return returnCount;
+    }
+
+    /**
+     * Handles {@link WeatherBatch#insert(ContentResolver)} and
+     * {@link WeatherContract#METHOD_CHECKPOINT}.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_CHECKPOINT.equals(method)) {
+            WeatherDbHelper.checkpoint(mOpenHelper.getWritableDatabase());
+            return null;
+        }
+        if (!WeatherBatch.METHOD_BULK_INSERT.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        WeatherBatch batch = WeatherBatch.fromBundle(extras);
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int returnCount;
+        PendingChanges pendingChanges = getPendingChanges();
+        db.beginTransaction();
+        try {
+            Map<Long, Set<Long>> days = new HashMap<Long, Set<Long>>();
+            returnCount = insertWeather(db, batch, days);
+            weatherChanged(db, days, pendingChanges);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        applyChanges(pendingChanges);
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherBatch.KEY_INSERTED, returnCount);
+        return result;
+    }
+
+    /**
+     * Runs the insert, which throws rather than returning -1 when a constraint is broken.  Only
+     * the failed statement is rolled back; the transaction carries on.
+     *
+     * @param row what to log if the row is skipped
+     * @return false if the row was skipped
+     */
+    private static boolean executeInsert(SQLiteStatement statement, Object row) {
+        try {
+            statement.executeInsert();
+            return true;
+        } catch (SQLiteConstraintException e) {
+            Log.e(LOG_TAG, "Error inserting " + row, e);
+            return false;
+        }
+    }
+
+    private static boolean hasColumns(ContentValues values, String[] columns) {
+        if (values.size() != columns.length) {
+            return false;
+        }
+        for (String column : columns) {
+            if (!values.containsKey(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String buildInsert(String table, String[] columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? "," : "").append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ",?" : "?");
+        }
+        return sql.append(')').toString();
+    }
+
+    private static void bindValue(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    // Same as WeatherContract.normalizeDate(), reusing the caller's Time
+    private static long normalizeDate(Time time, long date) {
+        time.set(date);
+        int julianDay = Time.getJulianDay(date, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+
+    /**
+     * Applies the whole batch in a single transaction, so that a sync writing several
+     * locations at once either lands completely or not at all.  What its operations changed is
+     * collected and acted on once, after the transaction has committed, so that observers hear
+     * about a whole sync in one go.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        PendingChanges pendingChanges = new PendingChanges();
+        mPendingChanges.set(pendingChanges);
+        ContentProviderResult[] results;
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mPendingChanges.remove();
+        }
+        applyChanges(pendingChanges);
+        return results;
+    }
+
+    /**
+     * @return where a write should record what it changed: the changes of the batch it is part
+     *         of, or its own
+     */
+    private PendingChanges getPendingChanges() {
+        PendingChanges pendingChanges = mPendingChanges.get();
+        return pendingChanges != null ? pendingChanges : new PendingChanges();
+    }
+
+    private static void addDay(Map<Long, Set<Long>> days, Long locationId, Long date) {
+        if (locationId == null) {
+            return;
+        }
+        if (date == null) {
+            days.put(locationId, null);
+            return;
+        }
+        if (!days.containsKey(locationId)) {
+            days.put(locationId, new HashSet<Long>());
+        }
+        Set<Long> dates = days.get(locationId);
+        if (dates != null) {
+            dates.add(date);
+        }
+    }
+
+    /**
+     * Records that the weather changed on the given days of each location id, or on any day of
+     * the locations mapped to null, or everywhere if {@code days} is null.  Called inside the
+     * write's transaction, while the locations can still be looked up.
+     */
+    private static void weatherChanged(SQLiteDatabase db, Map<Long, Set<Long>> days,
+                                       PendingChanges pendingChanges) {
+        if (pendingChanges.allWeather) {
+            return;
+        }
+        Map<Long, String> locationSettings =
+                days != null ? getLocationSettings(db, days.keySet()) : null;
+        if (locationSettings == null) {
+            pendingChanges.allWeather = true;
+            return;
+        }
+        for (Map.Entry<Long, Set<Long>> entry : days.entrySet()) {
+            String locationSetting = locationSettings.get(entry.getKey());
+            Set<Long> dates = entry.getValue();
+            if (!pendingChanges.weather.containsKey(locationSetting)) {
+                pendingChanges.weather.put(locationSetting,
+                        dates != null ? new HashSet<Long>(dates) : null);
+            } else if (dates == null) {
+                pendingChanges.weather.put(locationSetting, null);
+            } else if (pendingChanges.weather.get(locationSetting) != null) {
+                pendingChanges.weather.get(locationSetting).addAll(dates);
+            }
+        }
+    }
+
+    /**
+     * Once the changes have committed, drops the cached results they made stale and notifies
+     * the most specific URIs that cover them.  A location changed on a single day notifies
+     * weather/[location]/[date], which the forecast list's weather/[location] hears too; more
+     * days than that notify weather/[location] alone, so that the list re-queries once rather
+     * than once per day.  A batch's changes are left for applyBatch() to act on.
+     */
+    private void applyChanges(PendingChanges pendingChanges) {
+        if (pendingChanges == mPendingChanges.get()) {
+            return;
+        }
+        ContentResolver resolver = getContext().getContentResolver();
+        if (pendingChanges.allWeather) {
+            if (mQueryCache != null) {
+                mQueryCache.invalidateAll();
+            }
+            resolver.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+        } else {
+            for (Map.Entry<String, Set<Long>> entry : pendingChanges.weather.entrySet()) {
+                String locationSetting = entry.getKey();
+                Set<Long> dates = entry.getValue();
+                if (mQueryCache != null) {
+                    mQueryCache.invalidate(locationSetting);
+                }
+                if (dates != null && dates.size() == 1) {
+                    resolver.notifyChange(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                            locationSetting, dates.iterator().next()), null);
+                } else if (dates == null || !dates.isEmpty()) {
+                    resolver.notifyChange(WeatherContract.WeatherEntry.buildWeatherLocation(
+                            locationSetting), null);
+                }
+            }
+        }
+        if (pendingChanges.locations) {
+            resolver.notifyChange(WeatherContract.LocationEntry.CONTENT_URI, null);
+        }
+    }
+
+    /**
+     * @return the days of each location that the selection matches weather rows on
+     */
+    private static Map<Long, Set<Long>> getWeatherDays(SQLiteDatabase db, String selection,
+                                                       String[] selectionArgs) {
+        Cursor cursor = db.query(true, WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                        WeatherContract.WeatherEntry.COLUMN_DATE},
+                selection, selectionArgs, null, null, null, null);
+        Map<Long, Set<Long>> days = new HashMap<Long, Set<Long>>();
+        while (cursor.moveToNext()) {
+            addDay(days, cursor.getLong(0), cursor.getLong(1));
+        }
+        cursor.close();
+        return days;
+    }
+
+    /**
+     * @return the location setting of each of the location rows, or null if any of them is gone
+     */
+    private static Map<Long, String> getLocationSettings(SQLiteDatabase db, Set<Long> locationIds) {
+        Map<Long, String> locationSettings = new HashMap<Long, String>();
+        if (locationIds.isEmpty()) {
+            return locationSettings;
+        }
+        StringBuilder selection = new StringBuilder(WeatherContract.LocationEntry._ID)
+                .append(" IN (");
+        String[] selectionArgs = new String[locationIds.size()];
+        int i = 0;
+        for (Long locationId : locationIds) {
+            selection.append(i > 0 ? ",?" : "?");
+            selectionArgs[i++] = Long.toString(locationId);
+        }
+        selection.append(')');
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                selection.toString(), selectionArgs, null, null, null);
+        while (cursor.moveToNext()) {
+            locationSettings.put(cursor.getLong(0), cursor.getString(1));
+        }
+        cursor.close();
+        return locationSettings.size() == locationIds.size() ? locationSettings : null;
+    }
+
+    /**
+     * @return the cache of forecast query results, or null if there is none on this platform
+     */
+    WeatherQueryCache getQueryCache() {
+        return mQueryCache;
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
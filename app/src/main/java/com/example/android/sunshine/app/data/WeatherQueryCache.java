@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.os.Build;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results of the provider's forecast queries, so that the forecast list, the
+ * widgets, Muzei and the notification asking for the same days again don't go back to SQLite
+ * until the data changes.
+ *
+ * Results are copied out of the database cursor into a snapshot that is never modified, and
+ * every hit gets its own cursor over it.  The provider invalidates entries after each write has
+ * committed; a query that was already reading when that happened doesn't store its result,
+ * since it may have seen the data from before the write.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class WeatherQueryCache {
+
+    // Enough for every screen and widget of a few locations
+    private static final int MAX_ENTRIES = 32;
+    // Longer results, like a location's whole history, aren't worth holding on to
+    static final int MAX_ROWS = 64;
+
+    static final class Key {
+        final int match;
+        final String locationSetting;
+        final long date;
+        final String[] projection;
+        final String sortOrder;
+        private final int mHashCode;
+
+        Key(int match, String locationSetting, long date, String[] projection, String sortOrder) {
+            this.match = match;
+            this.locationSetting = locationSetting;
+            this.date = date;
+            this.projection = projection == null ? null : projection.clone();
+            this.sortOrder = sortOrder;
+            int hashCode = match;
+            hashCode = 31 * hashCode + locationSetting.hashCode();
+            hashCode = 31 * hashCode + (int) (date ^ (date >>> 32));
+            hashCode = 31 * hashCode + Arrays.hashCode(projection);
+            hashCode = 31 * hashCode + (sortOrder == null ? 0 : sortOrder.hashCode());
+            mHashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return match == key.match
+                    && date == key.date
+                    && locationSetting.equals(key.locationSetting)
+                    && Arrays.equals(projection, key.projection)
+                    && (sortOrder == null ? key.sortOrder == null : sortOrder.equals(key.sortOrder));
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /**
+     * A REAL value, along with SQLite's own text for it, which isn't always what
+     * Double.toString() would make of it.
+     */
+    private static final class Real extends Number {
+        final double value;
+        final String text;
+
+        Real(double value, String text) {
+            this.value = value;
+            this.text = text;
+        }
+
+        @Override
+        public int intValue() {
+            return (int) value;
+        }
+
+        @Override
+        public long longValue() {
+            return (long) value;
+        }
+
+        @Override
+        public float floatValue() {
+            return (float) value;
+        }
+
+        @Override
+        public double doubleValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private static final class Snapshot {
+        final String[] columnNames;
+        final Object[][] rows;
+
+        Snapshot(String[] columnNames, Object[][] rows) {
+            this.columnNames = columnNames;
+            this.rows = rows;
+        }
+    }
+
+    private final Map<Key, Snapshot> mEntries =
+            new LinkedHashMap<Key, Snapshot>(MAX_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Snapshot> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    // Bumped by every invalidation
+    private long mGeneration;
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * @return a cursor over the cached result, or null if there is none, in which case the
+     *         caller should query the database and offer the result to {@link #put}
+     */
+    synchronized Cursor get(Key key) {
+        Snapshot snapshot = mEntries.get(key);
+        if (snapshot == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return new SnapshotCursor(snapshot);
+    }
+
+    /**
+     * @return the current generation, to be taken before querying the database and handed to
+     *         {@link #put}
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Copies the result into the cache, unless something was invalidated since
+     * {@code generation} was taken.  The cursor is closed either way.
+     *
+     * @return a cursor over the same rows, to be returned in place of {@code cursor}
+     */
+    Cursor put(Key key, Cursor cursor, long generation) {
+        if (cursor.getCount() > MAX_ROWS) {
+            // Hand the database cursor itself back, which hasn't been moved yet
+            return cursor;
+        }
+        Snapshot snapshot = takeSnapshot(cursor);
+        cursor.close();
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mEntries.put(key, snapshot);
+            }
+        }
+        return new SnapshotCursor(snapshot);
+    }
+
+    /**
+     * Drops every result for the location.
+     */
+    synchronized void invalidate(String locationSetting) {
+        mGeneration++;
+        Iterator<Key> keys = mEntries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().locationSetting.equals(locationSetting)) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops every result, for writes that can't be narrowed down to a location.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mEntries.clear();
+    }
+
+    synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    private static Snapshot takeSnapshot(Cursor cursor) {
+        String[] columnNames = cursor.getColumnNames();
+        Object[][] rows = new Object[cursor.getCount()][];
+        cursor.moveToPosition(-1);
+        for (int row = 0; cursor.moveToNext(); row++) {
+            Object[] values = new Object[columnNames.length];
+            for (int column = 0; column < columnNames.length; column++) {
+                switch (cursor.getType(column)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        values[column] = cursor.getLong(column);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        values[column] = new Real(cursor.getDouble(column),
+                                cursor.getString(column));
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        values[column] = cursor.getString(column);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        values[column] = cursor.getBlob(column);
+                        break;
+                    default:
+                        values[column] = null;
+                }
+            }
+            rows[row] = values;
+        }
+        return new Snapshot(columnNames, rows);
+    }
+
+    /**
+     * Read-only cursor over a snapshot.  Reads the same values, with the same types, that the
+     * database cursor the snapshot was taken from did.
+     */
+    private static final class SnapshotCursor extends AbstractCursor {
+        private final Snapshot mSnapshot;
+
+        SnapshotCursor(Snapshot snapshot) {
+            mSnapshot = snapshot;
+        }
+
+        private Object get(int column) {
+            if (column < 0 || column >= mSnapshot.columnNames.length) {
+                throw new IllegalArgumentException("Invalid column " + column);
+            }
+            if (mPos < 0 || mPos >= mSnapshot.rows.length) {
+                throw new IllegalStateException("Cursor is not on a row");
+            }
+            return mSnapshot.rows[mPos][column];
+        }
+
+        @Override
+        public int getCount() {
+            return mSnapshot.rows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mSnapshot.columnNames;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return value == null ? 0 : Long.parseLong(value.toString());
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return value == null ? 0 : Double.parseDouble(value.toString());
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return (byte[]) get(column);
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return FIELD_TYPE_NULL;
+            } else if (value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            } else if (value instanceof Real) {
+                return FIELD_TYPE_FLOAT;
+            } else if (value instanceof byte[]) {
+                return FIELD_TYPE_BLOB;
+            }
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Keeps the sync from going back to a forecast server that has failed sync after sync.  Once
+ * {@link #FAILURE_THRESHOLD} syncs in a row got nothing but server failures the breaker opens,
+ * and automatic syncs don't make any requests until it has cooled down.  The first sync after
+ * that makes a single probe; if that fails too the breaker opens again for twice as long, up
+ * to {@link #MAX_OPEN_MILLIS}.  The state is kept in its own preferences file, so it carries
+ * over from one sync to the next even if the process has gone in between.
+ */
+class ForecastCircuitBreaker {
+
+    private static final String PREFS_NAME = "forecast_circuit_breaker";
+
+    private static final String KEY_FAILED_SYNCS = "failed_syncs";
+    private static final String KEY_OPEN_UNTIL = "open_until";
+
+    static final int FAILURE_THRESHOLD = 3;
+    static final long MIN_OPEN_MILLIS = 1000 * 60 * 30;
+    static final long MAX_OPEN_MILLIS = 1000 * 60 * 60 * 12;
+
+    private final SharedPreferences mPrefs;
+
+    ForecastCircuitBreaker(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return false while the breaker is open and the server should be left alone
+     */
+    boolean allowRequest(long now) {
+        return now >= getOpenUntil();
+    }
+
+    /**
+     * @return true if the server has failed often enough that the next sync is only a probe
+     */
+    boolean isTripped() {
+        return mPrefs.getInt(KEY_FAILED_SYNCS, 0) >= FAILURE_THRESHOLD;
+    }
+
+    /**
+     * @return when the breaker closes again, or 0 if it isn't open
+     */
+    long getOpenUntil() {
+        return mPrefs.getLong(KEY_OPEN_UNTIL, 0);
+    }
+
+    void recordSuccess() {
+        if (mPrefs.contains(KEY_FAILED_SYNCS)) {
+            reset();
+        }
+    }
+
+    /**
+     * Counts a sync in which the server failed every request.
+     *
+     * @return when the breaker closes again, or 0 if this failure didn't open it
+     */
+    long recordFailure(long now) {
+        int failedSyncs = mPrefs.getInt(KEY_FAILED_SYNCS, 0) + 1;
+        long openUntil = 0;
+        if (failedSyncs >= FAILURE_THRESHOLD) {
+            long openMillis = MIN_OPEN_MILLIS;
+            for (int i = FAILURE_THRESHOLD; i < failedSyncs && openMillis < MAX_OPEN_MILLIS; i++) {
+                openMillis *= 2;
+            }
+            openUntil = now + Math.min(openMillis, MAX_OPEN_MILLIS);
+        }
+        mPrefs.edit()
+                .putInt(KEY_FAILED_SYNCS, failedSyncs)
+                .putLong(KEY_OPEN_UNTIL, openUntil)
+                .commit();
+        return openUntil;
+    }
+
+    void reset() {
+        mPrefs.edit()
+                .remove(KEY_FAILED_SYNCS)
+                .remove(KEY_OPEN_UNTIL)
+                .commit();
+    }
+}
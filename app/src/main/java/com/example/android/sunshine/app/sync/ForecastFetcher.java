@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+
+/**
+ * Downloads and parses the forecast for a single location.  Fetchers never touch the
+ * database, so that the sync adapter can run several of them at once and store all of their
+ * results together.
+ */
+class ForecastFetcher implements Callable<ForecastFetcher.Result> {
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 15 * 1000;
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * What a fetch came back with.
+     */
+    static final class Result {
+        static final int NO_RESPONSE = -1;
+
+        final String locationSetting;
+
+        // LOCATION_STATUS_OK if there is a forecast, or the one we have is still current
+        @SunshineSyncAdapter.LocationStatus int status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        boolean notModified;
+        // The HTTP status the server answered with, if it answered at all
+        int responseCode = NO_RESPONSE;
+
+        String cityName;
+        double cityLatitude;
+        double cityLongitude;
+
+        // One entry per day, starting with today.  The location and date are filled in when the
+        // forecast is stored.
+        final Vector<ContentValues> days = new Vector<ContentValues>();
+
+        // Validators sent with the forecast, if any
+        String etag;
+        String lastModified;
+
+        Result(String locationSetting) {
+            this.locationSetting = locationSetting;
+        }
+
+        /**
+         * @return true if the fetch produced a new forecast that needs to be stored
+         */
+        boolean hasForecast() {
+            return status == SunshineSyncAdapter.LOCATION_STATUS_OK && !notModified;
+        }
+
+        /**
+         * @return true if the server couldn't be reached or failed to answer, rather than
+         *         turning the request down, so that trying again later may work
+         */
+        boolean isServerFailure() {
+            return isNoResponse() || isServerError();
+        }
+
+        /**
+         * @return true if nothing came back at all, which may just as well be down to the
+         *         device being offline
+         */
+        boolean isNoResponse() {
+            return status == SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN
+                    && responseCode == NO_RESPONSE;
+        }
+
+        /**
+         * @return true if the server answered, but with an error of its own or a request to
+         *         slow down
+         */
+        boolean isServerError() {
+            return status == SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN
+                    && (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR
+                    || responseCode == HTTP_TOO_MANY_REQUESTS);
+        }
+    }
+
+    private final String mForecastBaseUrl;
+    private final String mLocationSetting;
+    private final ForecastValidatorCache mValidatorCache;
+    private final RetryPolicy mRetryPolicy;
+
+    /**
+     * @param validatorCache if not null, the request is made conditional on the validators
+     *                       stored for the location
+     * @param retryPolicy    how to try again after a server failure
+     */
+    ForecastFetcher(String forecastBaseUrl, String locationSetting,
+                    ForecastValidatorCache validatorCache, RetryPolicy retryPolicy) {
+        mForecastBaseUrl = forecastBaseUrl;
+        mLocationSetting = locationSetting;
+        mValidatorCache = validatorCache;
+        mRetryPolicy = retryPolicy;
+    }
+
+    String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    /**
+     * Fetches the forecast, trying again as the retry policy allows for as long as the server
+     * fails to answer.  Answers that turn the request down, such as an unknown location, are
+     * returned straight away.
+     */
+    @Override
+    public Result call() {
+        Result result = fetch();
+        for (int retry = 1; retry <= mRetryPolicy.getMaxRetries() && result.isServerFailure();
+                retry++) {
+            long delayMillis = mRetryPolicy.getDelayMillis(retry);
+            Log.d(LOG_TAG, "Retrying " + mLocationSetting + " in " + delayMillis + "ms");
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                // The sync was cancelled
+                Thread.currentThread().interrupt();
+                break;
+            }
+            result = fetch();
+        }
+        return result;
+    }
+
+    private Result fetch() {
+        Result result = new Result(mLocationSetting);
+
+        // These three need to be declared outside the try/catch
+        // so that they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        BufferedReader reader = null;
+
+        String format = "json";
+        String units = "metric";
+        int numDays = 14;
+
+        try {
+            // Construct the URL for the OpenWeatherMap query
+            // Possible parameters are avaiable at OWM's forecast API page, at
+            // http://openweathermap.org/API#forecast
+            final String QUERY_PARAM = "q";
+            final String FORMAT_PARAM = "mode";
+            final String UNITS_PARAM = "units";
+            final String DAYS_PARAM = "cnt";
+            final String APPID_PARAM = "APPID";
+
+            Uri builtUri = Uri.parse(mForecastBaseUrl).buildUpon()
+                    .appendQueryParameter(QUERY_PARAM, mLocationSetting)
+                    .appendQueryParameter(FORMAT_PARAM, format)
+                    .appendQueryParameter(UNITS_PARAM, units)
+                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                    .build();
+
+            URL url = new URL(builtUri.toString());
+
+            // Create the request to OpenWeatherMap, and open the connection
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("GET");
+            urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            if (mValidatorCache != null) {
+                mValidatorCache.applyTo(urlConnection, mLocationSetting);
+            }
+            urlConnection.connect();
+
+            result.responseCode = urlConnection.getResponseCode();
+            if (result.responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // What we have is still current, so there is nothing to parse.
+                result.notModified = true;
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+                return result;
+            }
+
+            inputStream = urlConnection.getInputStream();
+            if (inputStream == null) {
+                // Nothing to do.
+                return result;
+            }
+            result.etag = urlConnection.getHeaderField(HEADER_ETAG);
+            result.lastModified = urlConnection.getHeaderField(HEADER_LAST_MODIFIED);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // Parse the forecast as it comes off the wire, without ever holding the
+                // whole response in memory.
+                getWeatherDataFromStream(inputStream, result);
+                return result;
+            }
+
+            // JsonReader isn't available before Honeycomb, so read the input stream into a
+            // String and parse it with the JSONObject API instead.
+            StringBuffer buffer = new StringBuffer();
+            reader = new BufferedReader(new InputStreamReader(inputStream));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
+                // But it does make debugging a *lot* easier if you print out the completed
+                // buffer for debugging.
+                buffer.append(line + "\n");
+            }
+
+            if (buffer.length() == 0) {
+                // Stream was empty.  No point in parsing.
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                return result;
+            }
+            getWeatherDataFromJson(buffer.toString(), result);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID;
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            } else if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Pull the forecast straight out of the response stream.  Each day is turned into
+     * ContentValues as soon as it has been read, so only the rows we are going to insert are
+     * ever kept around.
+     *
+     * @throws JSONException if the response is not a well formed forecast
+     * @throws IOException if the response could not be read
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void getWeatherDataFromStream(InputStream inputStream, final Result result)
+            throws IOException, JSONException {
+        ForecastJsonParser parser = new ForecastJsonParser();
+        parser.parse(inputStream, new ForecastJsonParser.DayHandler() {
+            @Override
+            public void onDay(int index, ForecastJsonParser.Day day) {
+                result.days.add(createWeatherValues(day.pressure, day.humidity, day.windSpeed,
+                        day.windDirection, day.high, day.low, day.description, day.weatherId));
+            }
+        });
+
+        result.status = getLocationStatus(parser.getMessageCode());
+        result.cityName = parser.getCityName();
+        result.cityLatitude = parser.getCityLatitude();
+        result.cityLongitude = parser.getCityLongitude();
+    }
+
+    /**
+     * Take the String representing the complete forecast in JSON Format and
+     * pull out the data we need to construct the Strings needed for the wireframes.
+     *
+     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
+     * into an Object hierarchy for us.  This is only used on devices without JsonReader; see
+     * {@link #getWeatherDataFromStream(InputStream, Result)}.
+     *
+     * @throws JSONException if the response is not a well formed forecast
+     */
+    private static void getWeatherDataFromJson(String forecastJsonStr, Result result)
+            throws JSONException {
+
+        // These are the names of the JSON objects that need to be extracted.
+
+        // Location information
+        final String OWM_CITY = "city";
+        final String OWM_CITY_NAME = "name";
+        final String OWM_COORD = "coord";
+
+        // Location coordinate
+        final String OWM_LATITUDE = "lat";
+        final String OWM_LONGITUDE = "lon";
+
+        // Weather information.  Each day's forecast info is an element of the "list" array.
+        final String OWM_LIST = "list";
+
+        final String OWM_PRESSURE = "pressure";
+        final String OWM_HUMIDITY = "humidity";
+        final String OWM_WINDSPEED = "speed";
+        final String OWM_WIND_DIRECTION = "deg";
+
+        // All temperatures are children of the "temp" object.
+        final String OWM_TEMPERATURE = "temp";
+        final String OWM_MAX = "max";
+        final String OWM_MIN = "min";
+
+        final String OWM_WEATHER = "weather";
+        final String OWM_DESCRIPTION = "main";
+        final String OWM_WEATHER_ID = "id";
+
+        final String OWM_MESSAGE_CODE = "cod";
+
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        int messageCode = forecastJson.has(OWM_MESSAGE_CODE)
+                ? forecastJson.getInt(OWM_MESSAGE_CODE)
+                : ForecastJsonParser.NO_MESSAGE_CODE;
+        result.status = getLocationStatus(messageCode);
+        if (result.status != SunshineSyncAdapter.LOCATION_STATUS_OK) {
+            return;
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        result.cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        result.cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        result.cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        for(int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+
+            result.days.add(createWeatherValues(
+                    dayForecast.getDouble(OWM_PRESSURE),
+                    dayForecast.getInt(OWM_HUMIDITY),
+                    dayForecast.getDouble(OWM_WINDSPEED),
+                    dayForecast.getDouble(OWM_WIND_DIRECTION),
+                    temperatureObject.getDouble(OWM_MAX),
+                    temperatureObject.getDouble(OWM_MIN),
+                    weatherObject.getString(OWM_DESCRIPTION),
+                    weatherObject.getInt(OWM_WEATHER_ID)));
+        }
+    }
+
+    /**
+     * Maps the "cod" field of an OWM response to a location status.
+     *
+     * @param messageCode the code sent by the server, or ForecastJsonParser.NO_MESSAGE_CODE
+     * @return LOCATION_STATUS_OK if the response carries a forecast
+     */
+    @SunshineSyncAdapter.LocationStatus
+    private static int getLocationStatus(int messageCode) {
+        switch (messageCode) {
+            case ForecastJsonParser.NO_MESSAGE_CODE:
+            case HttpURLConnection.HTTP_OK:
+                return SunshineSyncAdapter.LOCATION_STATUS_OK;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                return SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+            default:
+                return SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        }
+    }
+
+    /**
+     * Builds the ContentValues for one day of weather, without its location and date.
+     */
+    private static ContentValues createWeatherValues(double pressure, int humidity,
+                                                     double windSpeed, double windDirection,
+                                                     double high, double low,
+                                                     String description, int weatherId) {
+        ContentValues weatherValues = new ContentValues();
+
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+
+        return weatherValues;
+    }
+}
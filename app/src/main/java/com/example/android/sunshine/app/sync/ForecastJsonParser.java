@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Pull parser for the OpenWeatherMap daily forecast response.
+ *
+ * Reads straight from the connection's input stream and hands every day to a
+ * {@link DayHandler} as soon as it has been read, so neither the raw response nor a
+ * JSONObject tree is ever held in memory.  The same {@link Day} instance is reused for
+ * every element of the "list" array.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class ForecastJsonParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    // Returned by getMessageCode() when the response did not carry a "cod" field
+    static final int NO_MESSAGE_CODE = -1;
+
+    // Bits recording which of the required day fields have been seen
+    private static final int FIELD_PRESSURE = 1;
+    private static final int FIELD_HUMIDITY = 1 << 1;
+    private static final int FIELD_WINDSPEED = 1 << 2;
+    private static final int FIELD_WIND_DIRECTION = 1 << 3;
+    private static final int FIELD_MAX = 1 << 4;
+    private static final int FIELD_MIN = 1 << 5;
+    private static final int FIELD_DESCRIPTION = 1 << 6;
+    private static final int FIELD_WEATHER_ID = 1 << 7;
+    private static final int ALL_DAY_FIELDS = (1 << 8) - 1;
+
+    /**
+     * One day of the forecast.  Instances are reused between callbacks, so a handler must
+     * copy out whatever it needs before returning.
+     */
+    static final class Day {
+        double pressure;
+        int humidity;
+        double windSpeed;
+        double windDirection;
+        double high;
+        double low;
+        String description;
+        int weatherId;
+
+        private int mFields;
+
+        private void clear() {
+            description = null;
+            mFields = 0;
+        }
+    }
+
+    interface DayHandler {
+        /**
+         * Called once per element of the "list" array, in the order the server sent them.
+         *
+         * @param index position of the day in the response, 0 being today
+         * @param day the parsed values, only valid for the duration of the call
+         */
+        void onDay(int index, Day day);
+    }
+
+    private int mMessageCode = NO_MESSAGE_CODE;
+    private String mCityName;
+    private double mCityLatitude;
+    private double mCityLongitude;
+    private boolean mHasCity;
+    private int mDayCount;
+
+    /**
+     * Reads a complete forecast response from the stream.  The stream is not closed.
+     *
+     * @throws JSONException if the payload is not a well formed forecast
+     * @throws IOException if the stream could not be read
+     */
+    void parse(InputStream in, DayHandler handler) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            readForecast(reader, handler);
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            JSONException jsonException = new JSONException(e.getMessage());
+            jsonException.initCause(e);
+            throw jsonException;
+        }
+    }
+
+    private void readForecast(JsonReader reader, DayHandler handler)
+            throws IOException, JSONException {
+        boolean hasList = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                // OWM sends this as a string on success and a number on some errors;
+                // nextInt() copes with both.
+                mMessageCode = reader.nextInt();
+            } else if (OWM_CITY.equals(name)) {
+                readCity(reader);
+            } else if (OWM_LIST.equals(name)) {
+                readList(reader, handler);
+                hasList = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // Error responses only carry a code and a message, so only insist on the forecast
+        // itself when the server says it has one.
+        if (mMessageCode == NO_MESSAGE_CODE || mMessageCode == 200) {
+            if (!hasList) {
+                throw new JSONException("No value for " + OWM_LIST);
+            }
+            if (!mHasCity) {
+                throw new JSONException("No value for " + OWM_CITY);
+            }
+        }
+    }
+
+    private void readCity(JsonReader reader) throws IOException, JSONException {
+        boolean hasCoord = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                mCityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                readCoord(reader);
+                hasCoord = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (mCityName == null || !hasCoord) {
+            throw new JSONException("Incomplete " + OWM_CITY);
+        }
+        mHasCity = true;
+    }
+
+    private void readCoord(JsonReader reader) throws IOException, JSONException {
+        boolean hasLat = false;
+        boolean hasLon = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_LATITUDE.equals(name)) {
+                mCityLatitude = reader.nextDouble();
+                hasLat = true;
+            } else if (OWM_LONGITUDE.equals(name)) {
+                mCityLongitude = reader.nextDouble();
+                hasLon = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!hasLat || !hasLon) {
+            throw new JSONException("Incomplete " + OWM_COORD);
+        }
+    }
+
+    private void readList(JsonReader reader, DayHandler handler)
+            throws IOException, JSONException {
+        Day day = new Day();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            day.clear();
+            readDay(reader, day);
+            if (day.mFields != ALL_DAY_FIELDS) {
+                throw new JSONException("Incomplete day " + mDayCount + " in " + OWM_LIST);
+            }
+            handler.onDay(mDayCount++, day);
+        }
+        reader.endArray();
+    }
+
+    private void readDay(JsonReader reader, Day day) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                day.pressure = reader.nextDouble();
+                day.mFields |= FIELD_PRESSURE;
+            } else if (OWM_HUMIDITY.equals(name)) {
+                day.humidity = reader.nextInt();
+                day.mFields |= FIELD_HUMIDITY;
+            } else if (OWM_WINDSPEED.equals(name)) {
+                day.windSpeed = reader.nextDouble();
+                day.mFields |= FIELD_WINDSPEED;
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                day.windDirection = reader.nextDouble();
+                day.mFields |= FIELD_WIND_DIRECTION;
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                // Temperatures are in a child object called "temp".  Try not to name variables
+                // "temp" when working with temperature.  It confuses everybody.
+                readTemperature(reader, day);
+            } else if (OWM_WEATHER.equals(name)) {
+                readWeather(reader, day);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readTemperature(JsonReader reader, Day day) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MAX.equals(name)) {
+                day.high = reader.nextDouble();
+                day.mFields |= FIELD_MAX;
+            } else if (OWM_MIN.equals(name)) {
+                day.low = reader.nextDouble();
+                day.mFields |= FIELD_MIN;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readWeather(JsonReader reader, Day day) throws IOException {
+        // Description is in a child array called "weather", which is 1 element long.
+        // That element also contains a weather code.  Anything past the first is ignored.
+        reader.beginArray();
+        if (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_DESCRIPTION.equals(name) && reader.peek() != JsonToken.NULL) {
+                    day.description = reader.nextString();
+                    day.mFields |= FIELD_DESCRIPTION;
+                } else if (OWM_WEATHER_ID.equals(name)) {
+                    day.weatherId = reader.nextInt();
+                    day.mFields |= FIELD_WEATHER_ID;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+    }
+
+    /**
+     * @return the "cod" value of the response, or {@link #NO_MESSAGE_CODE} if it had none
+     */
+    int getMessageCode() {
+        return mMessageCode;
+    }
+
+    String getCityName() {
+        return mCityName;
+    }
+
+    double getCityLatitude() {
+        return mCityLatitude;
+    }
+
+    double getCityLongitude() {
+        return mCityLongitude;
+    }
+}
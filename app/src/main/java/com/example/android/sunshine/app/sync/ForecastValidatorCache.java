@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Remembers the HTTP validators (ETag and Last-Modified) of the last forecast we stored for
+ * each location setting, so that the next sync can ask the server whether anything changed
+ * instead of downloading the whole forecast again.
+ */
+class ForecastValidatorCache {
+
+    private static final String PREFS_NAME = "forecast_validators";
+
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String KEY_ETAG_PREFIX = "etag:";
+    private static final String KEY_LAST_MODIFIED_PREFIX = "last_modified:";
+
+    private final SharedPreferences mPrefs;
+
+    ForecastValidatorCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds the conditional request headers for the location, if we have any validators for it.
+     * Must be called before the connection is connected.
+     *
+     * @return true if at least one conditional header was added
+     */
+    boolean applyTo(HttpURLConnection urlConnection, String locationSetting) {
+        String etag = mPrefs.getString(KEY_ETAG_PREFIX + locationSetting, null);
+        String lastModified = mPrefs.getString(KEY_LAST_MODIFIED_PREFIX + locationSetting, null);
+        if (etag != null) {
+            urlConnection.setRequestProperty(HEADER_IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            urlConnection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * Stores the validators sent with a response whose forecast has been written to the
+     * database.  A response without validators clears whatever was stored before.
+     */
+    void save(String locationSetting, String etag, String lastModified) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        putOrRemove(editor, KEY_ETAG_PREFIX + locationSetting, etag);
+        putOrRemove(editor, KEY_LAST_MODIFIED_PREFIX + locationSetting, lastModified);
+        editor.apply();
+    }
+
+    /**
+     * Forgets the validators for the location, so that the next sync downloads the full
+     * forecast.
+     */
+    void clear(String locationSetting) {
+        mPrefs.edit()
+                .remove(KEY_ETAG_PREFIX + locationSetting)
+                .remove(KEY_LAST_MODIFIED_PREFIX + locationSetting)
+                .apply();
+    }
+
+    private static void putOrRemove(SharedPreferences.Editor editor, String key, String value) {
+        if (value != null) {
+            editor.putString(key, value);
+        } else {
+            editor.remove(key);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Decides whether a request for an immediate sync needs to go to the SyncManager at all.  A
+ * request for the location a sync is already on its way for is folded into that sync, whose
+ * forecast everyone then reads from the provider, and a request made shortly after a sync of
+ * the same location succeeded is dropped.  The state only lives as long as the process, which
+ * the sync adapter shares with the rest of the app.
+ */
+class ImmediateSyncCoordinator {
+    private static final String LOG_TAG = ImmediateSyncCoordinator.class.getSimpleName();
+
+    // How long a requested sync is taken to still be on its way.  The SyncManager holds syncs
+    // back while there is no network, and never runs them if sync has been turned off.
+    static final long IN_FLIGHT_TIMEOUT_MILLIS = 1000 * 60 * 5;
+
+    private static String sInFlightLocation;
+    private static long sInFlightSince;
+
+    private static String sSyncedLocation;
+    private static long sSyncedAt;
+
+    private ImmediateSyncCoordinator() {
+    }
+
+    /**
+     * @param freshnessMillis how long after a successful sync of the location another one is
+     *                        not worth making
+     * @return true if a sync of the location should be requested, in which case it is counted
+     *         as on its way from now on
+     */
+    static synchronized boolean shouldRequest(String locationSetting, long freshnessMillis) {
+        long now = SystemClock.elapsedRealtime();
+        if (locationSetting.equals(sInFlightLocation)
+                && now - sInFlightSince < IN_FLIGHT_TIMEOUT_MILLIS) {
+            Log.d(LOG_TAG, "Sync of " + locationSetting + " already on its way");
+            return false;
+        }
+        if (locationSetting.equals(sSyncedLocation) && now - sSyncedAt < freshnessMillis) {
+            Log.d(LOG_TAG, "Sync of " + locationSetting + " finished " + (now - sSyncedAt)
+                    + "ms ago");
+            return false;
+        }
+        sInFlightLocation = locationSetting;
+        sInFlightSince = now;
+        return true;
+    }
+
+    /**
+     * Called by the sync adapter as it starts a sync of the location, whoever asked for it.
+     */
+    static synchronized void onSyncStarted(String locationSetting) {
+        sInFlightLocation = locationSetting;
+        sInFlightSince = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Called by the sync adapter once a sync of the location is over.
+     *
+     * @param synced true if the location's forecast is now current
+     */
+    static synchronized void onSyncFinished(String locationSetting, boolean synced) {
+        if (locationSetting.equals(sInFlightLocation)) {
+            sInFlightLocation = null;
+        }
+        if (synced) {
+            sSyncedLocation = locationSetting;
+            sSyncedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    static synchronized void reset() {
+        sInFlightLocation = null;
+        sSyncedLocation = null;
+    }
+}
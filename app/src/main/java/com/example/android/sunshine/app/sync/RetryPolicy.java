@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.util.Random;
+
+/**
+ * How often, and how far apart, a fetch is tried again when the server fails to answer.  The
+ * delay doubles with every attempt, up to a cap, and half of it is random so that locations
+ * fetched together, and devices synced at the same moment, don't all come back at once.
+ */
+class RetryPolicy {
+
+    static final RetryPolicy DEFAULT = new RetryPolicy(3, 2 * 1000, 16 * 1000);
+    // A single attempt, for when the server is only being probed
+    static final RetryPolicy NONE = new RetryPolicy(0, 0, 0);
+
+    private final int mMaxRetries;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final Random mRandom = new Random();
+
+    /**
+     * @param maxRetries      how many times a fetch is tried again after the first attempt
+     * @param baseDelayMillis the delay before the first retry, before jitter
+     * @param maxDelayMillis  the longest any delay can be
+     */
+    RetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        mMaxRetries = maxRetries;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+    }
+
+    int getMaxRetries() {
+        return mMaxRetries;
+    }
+
+    /**
+     * @param retry 1 for the first retry, 2 for the second and so on
+     * @return how long to wait before making it
+     */
+    long getDelayMillis(int retry) {
+        long delayMillis = mBaseDelayMillis;
+        for (int i = 1; i < retry && delayMillis < mMaxDelayMillis; i++) {
+            delayMillis *= 2;
+        }
+        delayMillis = Math.min(delayMillis, mMaxDelayMillis);
+        long half = delayMillis / 2;
+        return half + (long) (mRandom.nextDouble() * (delayMillis - half));
+    }
+}
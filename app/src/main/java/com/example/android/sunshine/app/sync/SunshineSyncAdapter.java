@@ -3,15 +3,17 @@ package com.example.android.sunshine.app.sync;
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
@@ -22,6 +24,7 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
@@ -30,27 +33,28 @@ import android.text.format.Time;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.PreferenceSnapshot;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.app.wear.WearableForecastService;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -60,8 +64,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
+    // How long after a successful sync syncImmediately doesn't bother, in milliseconds
+    public static final long SYNC_FRESHNESS_MILLIS = 1000 * 60;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
+    // Upper bound on the number of forecasts downloaded at the same time
+    private static final int MAX_CONCURRENT_FETCHES = 4;
 
 
     private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
@@ -77,6 +85,22 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     private static final int INDEX_MIN_TEMP = 2;
     private static final int INDEX_SHORT_DESC = 3;
 
+    // Everything a sync writes for a day, used to tell whether a stored day has changed
+    private static final String[] STORED_WEATHER_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    // The date must come first in the projection
+    private static final int INDEX_STORED_DATE = 0;
+
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
     public @interface LocationStatus {}
@@ -87,275 +111,374 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+
+    // Where forecasts are fetched from.  Only ever changed by tests, to point the sync at a
+    // local server.
+    private String mForecastBaseUrl = FORECAST_BASE_URL;
+    // Likewise only changed by tests, so that retries don't take seconds
+    private RetryPolicy mRetryPolicy = RetryPolicy.DEFAULT;
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
     }
 
+    void setForecastBaseUrl(String forecastBaseUrl) {
+        mForecastBaseUrl = forecastBaseUrl;
+    }
+
+    void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
-
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
-
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
-
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+        ImmediateSyncCoordinator.onSyncStarted(preferredLocation);
+        boolean synced = false;
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
-
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
-            }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            synced = syncForecasts(preferredLocation, extras, syncResult);
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
+            ImmediateSyncCoordinator.onSyncFinished(preferredLocation, synced);
         }
-        return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
+     * Fetches the forecast for every location we know about and stores whatever changed.
      *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * @return true if the forecast for the preferred location is now current
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
+    private boolean syncForecasts(String preferredLocation, Bundle extras, SyncResult syncResult) {
+        ForecastValidatorCache validatorCache = new ForecastValidatorCache(getContext());
+
+        // Leave a server that keeps failing alone for a while.  Only the user asking for a
+        // sync, by picking a new location, gets through.  Until the server has answered again
+        // each sync is a single probe for the preferred location.
+        ForecastCircuitBreaker circuitBreaker = new ForecastCircuitBreaker(getContext());
+        long now = System.currentTimeMillis();
+        boolean manual = extras != null
+                && extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false);
+        if (!circuitBreaker.allowRequest(now) && !manual) {
+            Log.d(LOG_TAG, "Forecast server keeps failing, skipping sync");
+            syncResult.delayUntil = circuitBreaker.getOpenUntil() / 1000;
+            if (Utility.getLocationStatus(getContext()) != LOCATION_STATUS_SERVER_DOWN) {
+                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            }
+            return false;
+        }
+        boolean probe = circuitBreaker.isTripped();
+        RetryPolicy retryPolicy = probe ? RetryPolicy.NONE : mRetryPolicy;
+
+        // Refresh every location we know about, not just the one on screen, so that switching
+        // between them doesn't have to wait for the network.
+        List<String> locationSettings = probe
+                ? Collections.singletonList(preferredLocation)
+                : getLocationSettings(preferredLocation);
+        List<ForecastFetcher> fetchers = new ArrayList<ForecastFetcher>(locationSettings.size());
+        for (String locationSetting : locationSettings) {
+            // Only ask whether the forecast changed if we still have it; the database may
+            // have been cleared since the validators were stored.
+            fetchers.add(new ForecastFetcher(mForecastBaseUrl, locationSetting,
+                    hasCurrentWeather(locationSetting) ? validatorCache : null, retryPolicy));
+        }
 
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
+        List<ForecastFetcher.Result> results = fetchAll(fetchers);
+        if (!Thread.currentThread().isInterrupted()) {
+            updateCircuitBreaker(circuitBreaker, results, syncResult);
+        }
 
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
+        // Write everything that changed in one go
+        Set<String> changedLocations = new HashSet<String>();
+        Set<String> storedLocations = storeWeatherData(results, changedLocations);
+
+        boolean synced = false;
+        for (ForecastFetcher.Result result : results) {
+            if (storedLocations.contains(result.locationSetting)) {
+                // Validators are only worth keeping for a forecast we actually stored
+                validatorCache.save(result.locationSetting, result.etag, result.lastModified);
+            } else if (!result.notModified) {
+                validatorCache.clear(result.locationSetting);
+            }
 
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
+            // The status only ever describes the location on screen.  A forecast we got but
+            // couldn't store leaves it alone.
+            if (result.locationSetting.equals(preferredLocation)
+                    && (!result.hasForecast() || storedLocations.contains(preferredLocation))
+                    && result.status != Utility.getLocationStatus(getContext())) {
+                setLocationStatus(getContext(), result.status);
+            }
+            if (result.locationSetting.equals(preferredLocation)
+                    && result.status == LOCATION_STATUS_OK
+                    && (result.notModified || storedLocations.contains(preferredLocation))) {
+                synced = true;
+            }
+        }
 
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
+        // Everything outside the app only shows the preferred location, and only needs to
+        // hear about it when its forecast changed
+        if (changedLocations.contains(preferredLocation)) {
+            updateWidgets();
+            updateMuzei();
+            updateWearable();
+            notifyWeather();
+        }
+        // Nothing else gets written until the next sync, so this is the time to fold the
+        // write-ahead log back into the database
+        if (!storedLocations.isEmpty() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            checkpointDatabase();
+        }
+        Log.d(LOG_TAG, "Sync Complete. " + storedLocations.size() + " of " + results.size()
+                + " locations stored, " + changedLocations.size() + " changed");
+        return synced;
+    }
 
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
+    /**
+     * Counts the sync as a failure of the server if every request failed to get an answer from
+     * it.  Getting no response at all while offline isn't the server's fault, so a sync with
+     * nothing but those doesn't count either way; an error the server sent back always does.
+     */
+    private void updateCircuitBreaker(ForecastCircuitBreaker circuitBreaker,
+                                      List<ForecastFetcher.Result> results,
+                                      SyncResult syncResult) {
+        if (results.isEmpty()) {
+            return;
+        }
+        boolean serverError = false;
+        for (ForecastFetcher.Result result : results) {
+            if (!result.isServerFailure()) {
+                circuitBreaker.recordSuccess();
+                return;
+            }
+            serverError |= result.isServerError();
+        }
+        if (!serverError && !Utility.isNetworkAvailable(getContext())) {
+            return;
+        }
+        long openUntil = circuitBreaker.recordFailure(System.currentTimeMillis());
+        if (openUntil != 0) {
+            Log.d(LOG_TAG, "Forecast server keeps failing, leaving it alone for "
+                    + ((openUntil - System.currentTimeMillis()) / 1000) + "s");
+            syncResult.delayUntil = openUntil / 1000;
+        }
+    }
 
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void checkpointDatabase() {
+        getContext().getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_CHECKPOINT, null, null);
+    }
 
-        final String OWM_MESSAGE_CODE = "cod";
+    /**
+     * Runs the fetchers on a bounded pool, so that the whole sync takes about as long as the
+     * slowest of them rather than the sum of all of them.
+     *
+     * @return one result per fetcher, in the same order
+     */
+    private List<ForecastFetcher.Result> fetchAll(List<ForecastFetcher> fetchers) {
+        List<ForecastFetcher.Result> results =
+                new ArrayList<ForecastFetcher.Result>(fetchers.size());
+        if (fetchers.isEmpty()) {
+            return results;
+        }
+        if (fetchers.size() == 1) {
+            // No point in spinning up a pool for a single location
+            results.add(fetchers.get(0).call());
+            return results;
+        }
 
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(fetchers.size(), MAX_CONCURRENT_FETCHES));
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+            List<Future<ForecastFetcher.Result>> futures = executor.invokeAll(fetchers);
+            for (int i = 0; i < futures.size(); i++) {
+                ForecastFetcher.Result result;
+                try {
+                    result = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Error fetching forecast", e);
+                    result = null;
                 }
+                if (result == null) {
+                    result = new ForecastFetcher.Result(fetchers.get(i).getLocationSetting());
+                }
+                results.add(result);
             }
+        } catch (InterruptedException e) {
+            // The sync was cancelled.  Don't store half of it.
+            Log.d(LOG_TAG, "Sync interrupted");
+            Thread.currentThread().interrupt();
+            results.clear();
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
+    /**
+     * Writes every new forecast in the results to the database with a single batch, which the
+     * provider applies in one transaction, and deletes the weather from before today.  Days
+     * that are already stored with the same values are left alone, so observers only hear
+     * about the days that actually changed.
+     *
+     * @param changedLocations receives the location settings for which at least one day was
+     *                         written
+     * @return the location settings whose forecasts were stored, whether or not anything
+     *         changed
+     */
+    private Set<String> storeWeatherData(List<ForecastFetcher.Result> results,
+                                         Set<String> changedLocations) {
+        Set<String> storedLocations = new HashSet<String>();
+        Set<String> locationsWithWrites = new HashSet<String>();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
 
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
 
-                double high;
-                double low;
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
 
-                String description;
-                int weatherId;
+        Time dayTime = new Time();
+        dayTime.setToNow();
 
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
+        // we start at the day returned by local time. Otherwise this is a mess.
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
+        // now we work exclusively in UTC
+        dayTime = new Time();
 
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+        for (ForecastFetcher.Result result : results) {
+            if (!result.hasForecast() || result.days.isEmpty()) {
+                continue;
+            }
+            int operationCount = operations.size();
+
+            // New locations are inserted as part of the batch, and their weather refers back
+            // to the inserted row.
+            long locationId = getLocationId(result.locationSetting);
+            if (locationId == -1) {
+                int locationOperationIndex = operations.size();
+                operations.add(ContentProviderOperation
+                        .newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                        .withValues(createLocationValues(result))
+                        .build());
+                for (int i = 0; i < result.days.size(); i++) {
+                    ContentValues weatherValues = result.days.get(i);
+                    // Cheating to convert this to UTC time, which is what we want anyhow
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                            dayTime.setJulianDay(julianStartDay + i));
+                    operations.add(ContentProviderOperation
+                            .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                            .withValues(weatherValues)
+                            .withValueBackReference(WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                                    locationOperationIndex)
+                            .build());
+                }
+            } else {
+                Cursor storedCursor = getContext().getContentResolver().query(
+                        WeatherContract.WeatherEntry.CONTENT_URI,
+                        STORED_WEATHER_PROJECTION,
+                        WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                                WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?",
+                        new String[]{Long.toString(locationId),
+                                Long.toString(dayTime.setJulianDay(julianStartDay))},
+                        null);
+                Map<Long, Integer> storedPositions = new HashMap<Long, Integer>();
+                while (storedCursor.moveToNext()) {
+                    storedPositions.put(storedCursor.getLong(INDEX_STORED_DATE),
+                            storedCursor.getPosition());
+                }
 
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+                for (int i = 0; i < result.days.size(); i++) {
+                    ContentValues weatherValues = result.days.get(i);
+                    long date = dayTime.setJulianDay(julianStartDay + i);
+                    Integer storedPosition = storedPositions.get(date);
+                    if (storedPosition == null) {
+                        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+                        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                        operations.add(ContentProviderOperation
+                                .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                                .withValues(weatherValues)
+                                .build());
+                    } else {
+                        storedCursor.moveToPosition(storedPosition);
+                        if (isStored(weatherValues, storedCursor)) {
+                            continue;
+                        }
+                        // Update in place rather than REPLACE, which would delete the row and
+                        // insert it again.
+                        operations.add(ContentProviderOperation
+                                .newUpdate(WeatherContract.WeatherEntry.CONTENT_URI)
+                                .withSelection(WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                                                WeatherContract.WeatherEntry.COLUMN_DATE + " = ?",
+                                        new String[]{Long.toString(locationId), Long.toString(date)})
+                                .withValues(weatherValues)
+                                .build());
+                    }
+                }
+                storedCursor.close();
+            }
 
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+            storedLocations.add(result.locationSetting);
+            if (operations.size() > operationCount) {
+                locationsWithWrites.add(result.locationSetting);
+            }
+        }
 
-                ContentValues weatherValues = new ContentValues();
+        if (storedLocations.isEmpty()) {
+            return storedLocations;
+        }
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        // delete old data so we don't build up an endless history.  The provider only
+        // notifies if this actually removed something.
+        operations.add(ContentProviderOperation
+                .newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))})
+                .build());
 
-                cVVector.add(weatherValues);
-            }
+        try {
+            getContext().getContentResolver().applyBatch(
+                    WeatherContract.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Error storing forecasts", e);
+            storedLocations.clear();
+            return storedLocations;
+        }
+        changedLocations.addAll(locationsWithWrites);
+        return storedLocations;
+    }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
+    /**
+     * @return true if every value of the incoming day matches the stored row the cursor is on
+     */
+    private static boolean isStored(ContentValues weatherValues, Cursor storedCursor) {
+        // Start after the date, which is what the row was looked up by
+        for (int i = INDEX_STORED_DATE + 1; i < STORED_WEATHER_PROJECTION.length; i++) {
+            Object value = weatherValues.get(STORED_WEATHER_PROJECTION[i]);
+            if (value instanceof Number) {
+                // Every numeric column is compared as a double; the REAL columns hand back
+                // exactly what was put in.
+                if (((Number) value).doubleValue() != storedCursor.getDouble(i)) {
+                    return false;
+                }
+            } else if (value == null || !value.equals(storedCursor.getString(i))) {
+                return false;
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
-
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
         }
+        return true;
+    }
+
+    private static ContentValues createLocationValues(ForecastFetcher.Result result) {
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, result.cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, result.locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, result.cityLatitude);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, result.cityLongitude);
+        return locationValues;
     }
 
     private void updateWidgets() {
@@ -376,6 +499,13 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    private void updateWearable() {
+        // The service works out whether the watch face needs to hear about it
+        Context context = getContext();
+        context.startService(new Intent(ACTION_DATA_UPDATED)
+                .setClass(context, WearableForecastService.class));
+    }
+
     private void notifyWeather() {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
@@ -484,18 +614,62 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Helper method to check whether the database holds weather for the location from today on.
+     *
+     * @param locationSetting The location string used to request updates from the server.
+     * @return true if there is at least one row of current weather for the location.
+     */
+    private boolean hasCurrentWeather(String locationSetting) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, System.currentTimeMillis()),
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+        if (cursor == null) {
+            return false;
+        }
+        boolean hasWeather = cursor.moveToFirst();
+        cursor.close();
+        return hasWeather;
+    }
+
+    /**
+     * Helper method to list the locations a sync should refresh: the preferred one first,
+     * followed by every other location in the database.
+     *
+     * @param preferredLocation The location the user currently has selected.
+     * @return the location settings, without duplicates.
+     */
+    private List<String> getLocationSettings(String preferredLocation) {
+        Set<String> locationSettings = new LinkedHashSet<String>();
+        locationSettings.add(preferredLocation);
+
+        Cursor locationCursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null,
+                null,
+                null);
+        if (locationCursor != null) {
+            while (locationCursor.moveToNext()) {
+                locationSettings.add(locationCursor.getString(0));
+            }
+            locationCursor.close();
+        }
+        return new ArrayList<String>(locationSettings);
+    }
+
+    /**
+     * Helper method to look up a location in the weather database.
      *
      * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
+     * @return the row ID of the location, or -1 if it hasn't been stored yet.
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
+    long getLocationId(String locationSetting) {
+        long locationId = -1;
 
-        // First, check if the location with this city name exists in the db
         Cursor locationCursor = getContext().getContentResolver().query(
                 WeatherContract.LocationEntry.CONTENT_URI,
                 new String[]{WeatherContract.LocationEntry._ID},
@@ -506,30 +680,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         if (locationCursor.moveToFirst()) {
             int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
             locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
         }
 
         locationCursor.close();
-        // Wait, that worked?  Yes!
         return locationId;
     }
 
@@ -557,6 +710,22 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
      * @param context The context used to access the account service
      */
     public static void syncImmediately(Context context) {
+        syncImmediately(context, SYNC_FRESHNESS_MILLIS);
+    }
+
+    /**
+     * Helper method to have the sync adapter sync immediately, unless a sync of the preferred
+     * location is already on its way or succeeded less than freshnessMillis ago.  Either way
+     * the forecast turns up in the provider.
+     * @param context The context used to access the account service
+     * @param freshnessMillis How long after a successful sync another one isn't needed, or 0
+     *                        to sync unless one is already on its way
+     */
+    public static void syncImmediately(Context context, long freshnessMillis) {
+        if (!ImmediateSyncCoordinator.shouldRequest(Utility.getPreferredLocation(context),
+                freshnessMillis)) {
+            return;
+        }
         Bundle bundle = new Bundle();
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
@@ -635,5 +804,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         SharedPreferences.Editor spe = sp.edit();
         spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
         spe.commit();
+        PreferenceSnapshot.refresh(c);
     }
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.util.Base64;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IntentService which publishes today's forecast for the preferred location to the watch face.
+ * It is started whenever that forecast may have changed, and only puts a data item when what the
+ * watch would show is different from what it was last sent.
+ *
+ * The forecast goes over as a small binary payload, version {@link #PAYLOAD_VERSION}:
+ * <pre>
+ *   byte   version
+ *   byte   flags, {@link #FLAG_METRIC} if the temperatures are to be shown in Celsius
+ *   short  OpenWeatherMap weather condition id
+ *   short  high, in tenths of a degree Celsius
+ *   short  low, in tenths of a degree Celsius
+ * </pre>
+ * all big-endian.  The watch face converts and formats the temperatures itself and picks an
+ * icon it bundles for the condition, so no image is sent.
+ */
+public class WearableForecastService extends IntentService {
+    private final String LOG_TAG = WearableForecastService.class.getSimpleName();
+
+    // Paths and keys the watch face reads, see SunshineWatchFaceService.WatchfaceSyncCommons
+    private static final String WEARABLE_DATA_PATH = "/wearable-data";
+    private static final String FORECAST_KEY = "forecast";
+    // Where earlier versions sent the art, which is deleted on the next publish
+    private static final String IMAGE_PATH = "/image";
+
+    static final byte PAYLOAD_VERSION = 1;
+    static final int PAYLOAD_SIZE = 8;
+    static final int FLAG_METRIC = 1;
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_ID = 0;
+    private static final int INDEX_MAX_TEMP = 1;
+    private static final int INDEX_MIN_TEMP = 2;
+
+    public WearableForecastService() {
+        super("WearableForecastService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        // Get today's data from the ContentProvider
+        String location = Utility.getPreferredLocation(this);
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                location, System.currentTimeMillis());
+        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (data == null) {
+            return;
+        }
+        if (!data.moveToFirst()) {
+            data.close();
+            return;
+        }
+        byte[] payload = createPayload(data.getInt(INDEX_WEATHER_ID),
+                data.getDouble(INDEX_MAX_TEMP), data.getDouble(INDEX_MIN_TEMP),
+                Utility.isMetric(this));
+        data.close();
+
+        // The payload is everything the watch face shows, so it is its own fingerprint
+        String fingerprint = Base64.encodeToString(payload, Base64.NO_WRAP);
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        String lastWearableForecastKey = getString(R.string.pref_last_wearable_forecast);
+        if (fingerprint.equals(prefs.getString(lastWearableForecastKey, null))) {
+            return;
+        }
+
+        GoogleApiClient googleApiClient = new GoogleApiClient.Builder(this)
+                .addApi(Wearable.API)
+                .build();
+        ConnectionResult connectionResult =
+                googleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!connectionResult.isSuccess()) {
+            Log.w(LOG_TAG, "Couldn't connect to the wearable data layer: " + connectionResult);
+            return;
+        }
+        try {
+            PutDataMapRequest forecastRequest = PutDataMapRequest.create(WEARABLE_DATA_PATH);
+            forecastRequest.getDataMap().putByteArray(FORECAST_KEY, payload);
+            if (putDataItem(googleApiClient, forecastRequest)) {
+                prefs.edit().putString(lastWearableForecastKey, fingerprint).apply();
+                Wearable.DataApi.deleteDataItems(googleApiClient, new Uri.Builder()
+                        .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                        .path(IMAGE_PATH)
+                        .build()).await();
+            }
+        } finally {
+            googleApiClient.disconnect();
+        }
+    }
+
+    static byte[] createPayload(int weatherId, double high, double low, boolean metric) {
+        return ByteBuffer.allocate(PAYLOAD_SIZE)
+                .put(PAYLOAD_VERSION)
+                .put((byte) (metric ? FLAG_METRIC : 0))
+                .putShort((short) weatherId)
+                .putShort(toTenths(high))
+                .putShort(toTenths(low))
+                .array();
+    }
+
+    private static short toTenths(double temperature) {
+        return (short) Math.round(temperature * 10);
+    }
+
+    private boolean putDataItem(GoogleApiClient googleApiClient, PutDataMapRequest request) {
+        DataApi.DataItemResult result = Wearable.DataApi.putDataItem(googleApiClient,
+                request.asPutDataRequest()).await();
+        if (!result.getStatus().isSuccess()) {
+            Log.w(LOG_TAG, "Failed to put " + request.getUri() + ": " + result.getStatus());
+            return false;
+        }
+        return true;
+    }
+}
@@ -7,17 +7,19 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.support.v4.util.LruCache;
 import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -42,14 +44,29 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_MAX_TEMP = 4;
     static final int INDEX_WEATHER_MIN_TEMP = 5;
 
+    // Art for the remote icon packs, already decoded at the size the widget shows it
+    private static final int ART_CACHE_SIZE_KB = 1024;
+
+    private final LruCache<String, Bitmap> mArtCache = new LruCache<String, Bitmap>(ART_CACHE_SIZE_KB) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight() / 1024;
+        }
+    };
+
+    private static String getArtCacheKey(String artUrl, int size) {
+        return size + ":" + artUrl;
+    }
+
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            private int iconSize;
 
             @Override
             public void onCreate() {
-                // Nothing to do
+                iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
             }
 
             @Override
@@ -71,6 +88,43 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+                if (data != null && !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this)) {
+                    prefetchArt();
+                }
+            }
+
+            /**
+             * Loads the art for every condition in the data into mArtCache, once per condition,
+             * so that getViewAt never waits on the network or a decode.  This runs on a binder
+             * thread, where blocking is allowed.
+             */
+            private void prefetchArt() {
+                Set<Integer> weatherIds = new HashSet<Integer>();
+                for (data.moveToPosition(-1); data.moveToNext(); ) {
+                    weatherIds.add(data.getInt(INDEX_WEATHER_CONDITION_ID));
+                }
+                for (int weatherId : weatherIds) {
+                    String artUrl = Utility.getArtUrlForWeatherCondition(
+                            DetailWidgetRemoteViewsService.this, weatherId);
+                    if (artUrl == null) {
+                        continue;
+                    }
+                    String key = getArtCacheKey(artUrl, iconSize);
+                    if (mArtCache.get(key) != null) {
+                        continue;
+                    }
+                    try {
+                        Bitmap art = Glide.with(DetailWidgetRemoteViewsService.this)
+                                .load(artUrl)
+                                .asBitmap()
+                                .fitCenter()
+                                .into(iconSize, iconSize).get();
+                        mArtCache.put(key, art);
+                    } catch (InterruptedException | ExecutionException e) {
+                        // The row falls back to the bundled icon
+                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+                    }
+                }
             }
 
             @Override
@@ -98,16 +152,12 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
                 Bitmap weatherArtImage = null;
                 if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
+                    // Only what onDataSetChanged already fetched; anything else gets the bundled icon
                     String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
                             DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
+                    if (weatherArtResourceUrl != null) {
+                        weatherArtImage = mArtCache.get(
+                                getArtCacheKey(weatherArtResourceUrl, iconSize));
                     }
                 }
                 String description = data.getString(INDEX_WEATHER_DESC);
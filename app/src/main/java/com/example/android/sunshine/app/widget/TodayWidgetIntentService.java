@@ -20,12 +20,17 @@ import android.app.IntentService;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.res.Resources;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
@@ -34,10 +39,29 @@ import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * IntentService which handles updating all Today widgets with the latest data
+ * IntentService which handles updating all Today widgets with the latest data.
+ *
+ * It remembers what it last gave each widget, and leaves a widget alone when that hasn't
+ * changed.  When only the weather changed and the widget keeps its layout, just the weather
+ * views are sent.  Requests arriving in a burst are handled with a single pass.
  */
 public class TodayWidgetIntentService extends IntentService {
+    /**
+     * Set when the widgets' own views may be gone or stale, such as on APPWIDGET_UPDATE, so
+     * every widget gets a full update whatever it was last given.
+     */
+    public static final String EXTRA_FORCE = "force";
+
+    // How long to wait for more requests before updating
+    private static final long DEBOUNCE_MILLIS = 500;
+
     private static final String[] FORECAST_COLUMNS = {
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
@@ -50,12 +74,55 @@ public class TodayWidgetIntentService extends IntentService {
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
 
+    // What each widget was last given, by widget id.  Kept for the life of the process; if it
+    // has been lost, the widgets just get one full update too many.
+    private static final SparseIntArray sRenderedLayouts = new SparseIntArray();
+    private static final SparseIntArray sRenderedContent = new SparseIntArray();
+    // Each widget's width in pixels, from its options
+    private static final SparseIntArray sWidgetWidths = new SparseIntArray();
+
+    private final AtomicInteger mPendingRequests = new AtomicInteger();
+    private final AtomicBoolean mForcePending = new AtomicBoolean();
+
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
     }
 
+    /**
+     * Forgets what was rendered for widgets that have been removed.
+     */
+    static void forgetWidgets(int[] appWidgetIds) {
+        synchronized (sRenderedLayouts) {
+            for (int appWidgetId : appWidgetIds) {
+                sRenderedLayouts.delete(appWidgetId);
+                sRenderedContent.delete(appWidgetId);
+            }
+        }
+        synchronized (sWidgetWidths) {
+            for (int appWidgetId : appWidgetIds) {
+                sWidgetWidths.delete(appWidgetId);
+            }
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        mPendingRequests.incrementAndGet();
+        if (intent != null && intent.getBooleanExtra(EXTRA_FORCE, false)) {
+            mForcePending.set(true);
+        }
+        return super.onStartCommand(intent, flags, startId);
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
+        SystemClock.sleep(DEBOUNCE_MILLIS);
+        if (mPendingRequests.decrementAndGet() > 0) {
+            // A later request is queued behind this one and will see the same data, or newer
+            return;
+        }
+        boolean force = mForcePending.getAndSet(false);
+
         // Retrieve all of the Today widget ids: these are the widgets we need to update
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
@@ -84,13 +151,18 @@ public class TodayWidgetIntentService extends IntentService {
         String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
         data.close();
+        int contentHash = Arrays.hashCode(new Object[]{weatherArtResourceId, description,
+                formattedMaxTemperature, formattedMinTemperature});
 
-        // Perform this loop procedure for each Today widget
+        // Sort the widgets by the layout their width calls for, and by whether each needs a
+        // full update, only the weather, or nothing at all
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        SparseArray<List<Integer>> fullUpdates = new SparseArray<List<Integer>>();
+        SparseArray<List<Integer>> partialUpdates = new SparseArray<List<Integer>>();
         for (int appWidgetId : appWidgetIds) {
             // Find the correct layout based on the widget's width
             int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
             int layoutId;
             if (widgetWidth >= largeWidth) {
                 layoutId = R.layout.widget_today_large;
@@ -99,26 +171,85 @@ public class TodayWidgetIntentService extends IntentService {
             } else {
                 layoutId = R.layout.widget_today_small;
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
 
-            // Add the data to the RemoteViews
-            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
-            // Content Descriptions for RemoteViews were only added in ICS MR1
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                setRemoteContentDescription(views, description);
+            synchronized (sRenderedLayouts) {
+                boolean sameLayout = !force && sRenderedLayouts.get(appWidgetId) == layoutId;
+                if (sameLayout && sRenderedContent.get(appWidgetId) == contentHash) {
+                    // Already showing exactly this
+                    continue;
+                }
+                sRenderedLayouts.put(appWidgetId, layoutId);
+                sRenderedContent.put(appWidgetId, contentHash);
+                // Partial updates need Honeycomb; before that everything is a full update
+                if (sameLayout && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                    addToLayout(partialUpdates, layoutId, appWidgetId);
+                } else {
+                    addToLayout(fullUpdates, layoutId, appWidgetId);
+                }
             }
-            views.setTextViewText(R.id.widget_description, description);
-            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+        }
+
+        // Then build each layout once, and send it to all of its widgets in one call
+        for (int i = 0; i < fullUpdates.size(); i++) {
+            RemoteViews views = createViews(fullUpdates.keyAt(i), weatherArtResourceId,
+                    description, formattedMaxTemperature, formattedMinTemperature);
 
             // Create an Intent to launch MainActivity
             Intent launchIntent = new Intent(this, MainActivity.class);
             PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
             views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            // Tell the AppWidgetManager to perform an update on these app widgets
+            appWidgetManager.updateAppWidget(toArray(fullUpdates.valueAt(i)), views);
+        }
+        for (int i = 0; i < partialUpdates.size(); i++) {
+            // These widgets already have their layout and click intent, so only the weather
+            // needs to go over
+            RemoteViews views = createViews(partialUpdates.keyAt(i), weatherArtResourceId,
+                    description, formattedMaxTemperature, formattedMinTemperature);
+            partiallyUpdateAppWidget(appWidgetManager, toArray(partialUpdates.valueAt(i)), views);
+        }
+    }
+
+    private RemoteViews createViews(int layoutId, int weatherArtResourceId, String description,
+                                    String formattedMaxTemperature,
+                                    String formattedMinTemperature) {
+        RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+
+        // Add the data to the RemoteViews
+        views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+        // Content Descriptions for RemoteViews were only added in ICS MR1
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, description);
+        }
+        views.setTextViewText(R.id.widget_description, description);
+        views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+        return views;
+    }
+
+    private static void addToLayout(SparseArray<List<Integer>> widgetsByLayout, int layoutId,
+                                    int appWidgetId) {
+        List<Integer> appWidgetIds = widgetsByLayout.get(layoutId);
+        if (appWidgetIds == null) {
+            appWidgetIds = new ArrayList<Integer>();
+            widgetsByLayout.put(layoutId, appWidgetIds);
+        }
+        appWidgetIds.add(appWidgetId);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
         }
+        return array;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void partiallyUpdateAppWidget(AppWidgetManager appWidgetManager, int[] appWidgetIds,
+                                          RemoteViews views) {
+        appWidgetManager.partiallyUpdateAppWidget(appWidgetIds, views);
     }
 
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
@@ -127,21 +258,41 @@ public class TodayWidgetIntentService extends IntentService {
             return getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
         }
         // For Jelly Bean and higher devices, widgets can be resized - the current size can be
-        // retrieved from the newly added App Widget Options
-        return getWidgetWidthFromOptions(appWidgetManager, appWidgetId);
+        // retrieved from the newly added App Widget Options.  Those are kept from
+        // onAppWidgetOptionsChanged, and only asked for when a widget hasn't reported any yet.
+        synchronized (sWidgetWidths) {
+            int widgetWidth = sWidgetWidths.get(appWidgetId);
+            if (widgetWidth == 0) {
+                widgetWidth = getWidgetWidthFromOptions(getResources(),
+                        appWidgetManager.getAppWidgetOptions(appWidgetId));
+                sWidgetWidths.put(appWidgetId, widgetWidth);
+            }
+            return widgetWidth;
+        }
+    }
+
+    /**
+     * Records a widget's new options, as passed to
+     * {@link TodayWidgetProvider#onAppWidgetOptionsChanged}, for the next update to use.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    static void setWidgetOptions(Context context, int appWidgetId, Bundle options) {
+        int widgetWidth = getWidgetWidthFromOptions(context.getResources(), options);
+        synchronized (sWidgetWidths) {
+            sWidgetWidths.put(appWidgetId, widgetWidth);
+        }
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
-    private int getWidgetWidthFromOptions(AppWidgetManager appWidgetManager, int appWidgetId) {
-        Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
-        if (options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
+    private static int getWidgetWidthFromOptions(Resources resources, Bundle options) {
+        if (options != null && options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
             int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
             // The width returned is in dp, but we'll convert it to pixels to match the other widths
-            DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+            DisplayMetrics displayMetrics = resources.getDisplayMetrics();
             return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
                     displayMetrics);
         }
-        return  getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        return resources.getDimensionPixelSize(R.dimen.widget_today_default_width);
     }
 
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
@@ -0,0 +1,112 @@
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Measures how long the watch face takes to draw its frames and how many objects each frame
+ * allocates, and logs a summary every so many frames.  Steady-state frames should allocate
+ * nothing.  Interactive and ambient frames are counted by separate instances, so the two can be
+ * compared.
+ *
+ * Off unless turned on with {@code adb shell setprop log.tag.FrameStats DEBUG} before the watch
+ * face starts, as counting allocations slows the whole process down.
+ */
+class FrameStats {
+
+    private static final String TAG = "FrameStats";
+
+    private final String mode;
+    private final int framesPerReport;
+    private final boolean enabled;
+    private final long createdNanos = System.nanoTime();
+    private boolean weatherDrawn;
+
+    private long frameStartNanos;
+    private int frameStartAllocCount;
+
+    private int frames;
+    private long totalNanos;
+    private long maxNanos;
+    private int totalAllocCount;
+    private int maxAllocCount;
+    private int allocatingFrames;
+
+    @SuppressWarnings("deprecation")
+    FrameStats(String mode, int framesPerReport) {
+        this.mode = mode;
+        this.framesPerReport = framesPerReport;
+        enabled = Log.isLoggable(TAG, Log.DEBUG);
+        if (enabled) {
+            Debug.startAllocCounting();
+        }
+    }
+
+    void startFrame() {
+        if (!enabled) {
+            return;
+        }
+        frameStartAllocCount = getThreadAllocCount();
+        frameStartNanos = System.nanoTime();
+    }
+
+    void endFrame() {
+        if (!enabled) {
+            return;
+        }
+        long nanos = System.nanoTime() - frameStartNanos;
+        int allocCount = getThreadAllocCount() - frameStartAllocCount;
+
+        frames++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        totalAllocCount += allocCount;
+        maxAllocCount = Math.max(maxAllocCount, allocCount);
+        if (allocCount > 0) {
+            allocatingFrames++;
+        }
+        if (frames == framesPerReport) {
+            Log.d(TAG, frames + " " + mode + " frames: average " + (totalNanos / frames / 1000) + "us, max "
+                    + (maxNanos / 1000) + "us; " + allocatingFrames + " allocated, "
+                    + totalAllocCount + " objects in total, at most " + maxAllocCount
+                    + " in one frame");
+            reset();
+        }
+    }
+
+    /**
+     * Logs how long it took from the watch face starting to its first frame with weather on it.
+     */
+    void weatherDrawn() {
+        if (!enabled || weatherDrawn) {
+            return;
+        }
+        weatherDrawn = true;
+        Log.d(TAG, "First frame with weather " + ((System.nanoTime() - createdNanos) / 1000000)
+                + "ms after starting");
+    }
+
+    /**
+     * Stops counting, for when the watch face goes away.
+     */
+    @SuppressWarnings("deprecation")
+    void release() {
+        if (enabled) {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int getThreadAllocCount() {
+        return Debug.getThreadAllocCount();
+    }
+
+    private void reset() {
+        frames = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        totalAllocCount = 0;
+        maxAllocCount = 0;
+        allocatingFrames = 0;
+    }
+}
@@ -10,11 +10,13 @@ import android.text.format.Time;
 
 public class SunshineWatchFace {
 
-    private static final String TIME_FORMAT_WITHOUT_SECONDS = "%02d.%02d";
-    private static final String TIME_FORMAT_WITH_SECONDS = TIME_FORMAT_WITHOUT_SECONDS + ".%02d";
-    private static final String DATE_FORMAT = "%02d.%02d.%d";
+    private static final char TIME_SEPARATOR = '.';
+    private static final int TIME_LENGTH_WITHOUT_SECONDS = 5;
+    private static final int TIME_LENGTH_WITH_SECONDS = 8;
+    private static final char DATE_SEPARATOR = '.';
     private static final int DATE_AND_TIME_DEFAULT_COLOUR = Color.WHITE;
     private static final int BACKGROUND_DEFAULT_COLOUR = R.color.primary;
+    private static final int AMBIENT_ICON_ALPHA_THRESHOLD = 0x80;
 
     private final Paint timePaint;
     private final Paint datePaint;
@@ -26,8 +28,35 @@ public class SunshineWatchFace {
     private int dateAndTimeColour = DATE_AND_TIME_DEFAULT_COLOUR;
 
     private String lowTemp, highTemp;
+    private String lowTempText, highTempText;
     private Bitmap bitmap;
 
+    // In ambient mode everything but the time is drawn once into ambientLayer, which each
+    // minute's frame then copies before drawing the time on top
+    private boolean ambient, lowBitAmbient, burnInProtection;
+    private Bitmap ambientLayer;
+    private Canvas ambientLayerCanvas;
+    private boolean ambientLayerValid;
+    private Bitmap ambientIcon;
+
+    // Text is written into these on every frame instead of formatting new Strings
+    private final char[] timeChars = new char[TIME_LENGTH_WITH_SECONDS];
+    // "dd.mm.yyyy", with room for a longer year
+    private final char[] dateChars = new char[16];
+    private int dateLength;
+    private int dateMonthDay = -1, dateMonth = -1, dateYear = -1;
+
+    // Layout, worked out again only when what it depends on changes
+    private final Rect textBounds = new Rect();
+    private final Rect layoutBounds = new Rect();
+    private float layoutTimeTextSize, layoutDateTextSize;
+    private int layoutTimeLength = -1;
+    private boolean dateLayoutValid, tempLayoutValid;
+    private float timeXOffset, timeYOffset;
+    private float dateXOffset, dateYOffset;
+    private float highTempXOffset, highTempYOffset;
+    private float lowTempXOffset, lowTempYOffset;
+
     public static SunshineWatchFace newInstance(Context context) {
         Paint timePaint = new Paint();
         timePaint.setColor(DATE_AND_TIME_DEFAULT_COLOUR);
@@ -52,103 +81,250 @@ public class SunshineWatchFace {
         this.time = time;
     }
 
-    public void setTemp(String highTemp, String lowTemp) {
+    public void setTemp(String highTemp, String lowTemp, String unit) {
         this.lowTemp = lowTemp;
         this.highTemp = highTemp;
+        // Built here, as the temperatures only change with a sync
+        lowTempText = lowTemp != null ? lowTemp + unit : null;
+        highTempText = highTemp != null ? highTemp + unit : null;
+        tempLayoutValid = false;
     }
 
     public void setBitmap(Bitmap bm) {
         this.bitmap = bm;
+        ambientIcon = null;
+        ambientLayerValid = false;
+    }
+
+    /**
+     * Switches between the interactive and ambient renderings.  In ambient mode the screen may
+     * only be able to show a few colours without anti-aliasing ({@code lowBitAmbient}), and on
+     * screens that need {@code burnInProtection} text is outlined and the icon left out, so as
+     * few pixels as possible stay lit for long.
+     */
+    public void setAmbient(boolean ambient, boolean lowBitAmbient, boolean burnInProtection) {
+        this.ambient = ambient;
+        this.lowBitAmbient = lowBitAmbient;
+        this.burnInProtection = burnInProtection;
+        boolean antiAlias = !(ambient && lowBitAmbient);
+        timePaint.setAntiAlias(antiAlias);
+        datePaint.setAntiAlias(antiAlias);
+        Paint.Style style = ambient && burnInProtection ? Paint.Style.STROKE : Paint.Style.FILL;
+        timePaint.setStyle(style);
+        datePaint.setStyle(style);
+        ambientLayerValid = false;
     }
 
+    /**
+     * Draws a frame.  Once the layout has been worked out for the current bounds and text,
+     * this doesn't allocate anything, as it runs every second while the watch is interactive.
+     */
     public void draw(Canvas canvas, Rect bounds) {
         time.setToNow();
-        canvas.drawRect(0, 0, bounds.width(), bounds.height(), backgroundPaint);
 
-        String timeText = String.format(shouldShowSeconds ? TIME_FORMAT_WITH_SECONDS : TIME_FORMAT_WITHOUT_SECONDS, time.hour, time.minute, time.second);
-        float timeXOffset = computeXOffset(timeText, timePaint, bounds);
-        float timeYOffset = computeTimeYOffset(timeText, timePaint, bounds);
-        canvas.drawText(timeText, timeXOffset, timeYOffset, timePaint);
-
-        String dateText = String.format(DATE_FORMAT, time.monthDay, (time.month + 1), time.year);
-        float dateXOffset = computeXOffset(dateText, datePaint, bounds);
-        float dateYOffset = computeDateYOffset(dateText, datePaint);
-        canvas.drawText(dateText, dateXOffset, timeYOffset + dateYOffset, datePaint);
+        int timeLength = writeTime();
+        if (!bounds.equals(layoutBounds)) {
+            layoutBounds.set(bounds);
+            layoutTimeLength = -1;
+            dateLayoutValid = false;
+            tempLayoutValid = false;
+        }
+        if (timeLength != layoutTimeLength || timePaint.getTextSize() != layoutTimeTextSize) {
+            layoutTime(timeLength, bounds);
+        }
+        if (time.monthDay != dateMonthDay || time.month != dateMonth || time.year != dateYear) {
+            writeDate();
+            dateLayoutValid = false;
+        }
+        if (!dateLayoutValid || datePaint.getTextSize() != layoutDateTextSize) {
+            layoutDate(bounds);
+        }
+        if (!tempLayoutValid) {
+            layoutTemps(bounds);
+        }
 
-        if (highTemp != null) {
-            float tempXOffset = computeXOffset(highTemp, datePaint, bounds);
-            float tempYOffset = computeTempYOffset(highTemp, datePaint);
-            canvas.drawText(highTemp + "C", tempXOffset - 10.0f, tempYOffset + dateYOffset + timeYOffset, datePaint);
+        if (ambient) {
+            if (!ambientLayerValid) {
+                drawAmbientLayer(bounds);
+            }
+            canvas.drawBitmap(ambientLayer, 0, 0, null);
+        } else {
+            canvas.drawRect(0, 0, bounds.width(), bounds.height(), backgroundPaint);
+            drawDateAndWeather(canvas, bitmap);
         }
+        canvas.drawText(timeChars, 0, timeLength, timeXOffset, timeYOffset, timePaint);
+    }
 
-        if (lowTemp != null) {
-            float tempXOffset = computeLowXOffset(lowTemp, datePaint, bounds);
-            float tempYOffset = computeTempYOffset(lowTemp, datePaint);
-            canvas.drawText(lowTemp + "C", tempXOffset, tempYOffset + dateYOffset + timeYOffset, datePaint);
+    private void drawDateAndWeather(Canvas canvas, Bitmap icon) {
+        canvas.drawText(dateChars, 0, dateLength, dateXOffset, timeYOffset + dateYOffset, datePaint);
+
+        if (highTempText != null) {
+            canvas.drawText(highTempText, highTempXOffset - 10.0f,
+                    highTempYOffset + dateYOffset + timeYOffset, datePaint);
         }
 
-        if (bitmap != null) {
+        if (lowTempText != null) {
+            canvas.drawText(lowTempText, lowTempXOffset,
+                    lowTempYOffset + dateYOffset + timeYOffset, datePaint);
+        }
 
-            canvas.drawBitmap(bitmap, 40, timeYOffset + (bitmap.getHeight() - bitmap.getHeight() / 4), datePaint);
+        if (icon != null) {
+            canvas.drawBitmap(icon, 40, timeYOffset + (icon.getHeight() - icon.getHeight() / 4), datePaint);
+        }
+    }
 
+    /**
+     * Draws the parts of the ambient face that change at most a few times a day.  Called again
+     * only when one of them, the bounds or the ambient mode flags change, so a minute's tick
+     * costs a bitmap copy and the time.
+     */
+    private void drawAmbientLayer(Rect bounds) {
+        if (ambientLayer == null || ambientLayer.getWidth() != bounds.width()
+                || ambientLayer.getHeight() != bounds.height()) {
+            if (ambientLayer != null) {
+                ambientLayer.recycle();
+            }
+            ambientLayer = Bitmap.createBitmap(bounds.width(), bounds.height(),
+                    Bitmap.Config.ARGB_8888);
+            ambientLayerCanvas = new Canvas(ambientLayer);
+        }
+        ambientLayerCanvas.drawColor(Color.BLACK);
+
+        Bitmap icon = null;
+        if (bitmap != null && !burnInProtection) {
+            if (ambientIcon == null) {
+                ambientIcon = createAmbientIcon(bitmap);
+            }
+            icon = ambientIcon;
         }
+        drawDateAndWeather(ambientLayerCanvas, icon);
+        ambientLayerValid = true;
+    }
 
+    /**
+     * @return a copy of the icon with every pixel either white or transparent, which looks the
+     *         same on a low-bit screen and doesn't need filtering to draw
+     */
+    private static Bitmap createAmbientIcon(Bitmap icon) {
+        int width = icon.getWidth();
+        int height = icon.getHeight();
+        int[] pixels = new int[width * height];
+        icon.getPixels(pixels, 0, width, 0, 0, width, height);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = Color.alpha(pixels[i]) >= AMBIENT_ICON_ALPHA_THRESHOLD
+                    ? Color.WHITE : Color.TRANSPARENT;
+        }
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
 
+    /**
+     * Frees the ambient layer, for when the watch face goes away.
+     */
+    public void release() {
+        if (ambientLayer != null) {
+            ambientLayer.recycle();
+            ambientLayer = null;
+            ambientLayerCanvas = null;
+        }
+        ambientIcon = null;
     }
 
-    private float computeImageYOffset(Bitmap bm, Paint tempPaint) {
-        Rect textBounds = new Rect();
-        //tempPaint.getTextBounds(tempText, 0, tempText.length(), textBounds);
-        return bm.getHeight();
+    /**
+     * Writes the time as "hh.mm" or "hh.mm.ss" into timeChars.
+     *
+     * @return its length
+     */
+    private int writeTime() {
+        int length = writeTwoDigits(timeChars, 0, time.hour);
+        timeChars[length++] = TIME_SEPARATOR;
+        length = writeTwoDigits(timeChars, length, time.minute);
+        if (shouldShowSeconds) {
+            timeChars[length++] = TIME_SEPARATOR;
+            length = writeTwoDigits(timeChars, length, time.second);
+        }
+        return length;
     }
 
-    private float computeImageXOffset(String text, Paint paint, Rect watchBounds) {
-        float centerX = watchBounds.exactCenterX();
-        float timeLength = paint.measureText(text);
-        return centerX + (timeLength);
+    /**
+     * Writes the date as "dd.mm.yyyy" into dateChars.
+     */
+    private void writeDate() {
+        dateMonthDay = time.monthDay;
+        dateMonth = time.month;
+        dateYear = time.year;
+        int length = writeTwoDigits(dateChars, 0, dateMonthDay);
+        dateChars[length++] = DATE_SEPARATOR;
+        length = writeTwoDigits(dateChars, length, dateMonth + 1);
+        dateChars[length++] = DATE_SEPARATOR;
+        dateLength = writeNumber(dateChars, length, dateYear);
     }
 
-    private float computeTempYOffset(String tempText, Paint tempPaint) {
-        Rect textBounds = new Rect();
-        tempPaint.getTextBounds(tempText, 0, tempText.length(), textBounds);
-        return textBounds.height() + 50.0f;
+    private static int writeTwoDigits(char[] chars, int offset, int value) {
+        chars[offset] = (char) ('0' + value / 10 % 10);
+        chars[offset + 1] = (char) ('0' + value % 10);
+        return offset + 2;
     }
 
-    private float computeLowXOffset(String text, Paint paint, Rect watchBounds) {
-        float centerX = watchBounds.exactCenterX();
-        float timeLength = paint.measureText(text);
-        return centerX + (timeLength);
+    private static int writeNumber(char[] chars, int offset, int value) {
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + digits;
     }
 
-    private float computeXOffset(String text, Paint paint, Rect watchBounds) {
-        float centerX = watchBounds.exactCenterX();
-        float timeLength = paint.measureText(text);
-        return centerX - (timeLength / 2.0f);
+    // The time is centred on the width it had when laid out, so digits don't shift it each second
+    private void layoutTime(int timeLength, Rect watchBounds) {
+        layoutTimeLength = timeLength;
+        layoutTimeTextSize = timePaint.getTextSize();
+        timeXOffset = watchBounds.exactCenterX()
+                - timePaint.measureText(timeChars, 0, timeLength) / 2.0f;
+        timePaint.getTextBounds(timeChars, 0, timeLength, textBounds);
+        timeYOffset = watchBounds.centerY() - textBounds.height();
+        // Everything else is placed relative to the time
+        ambientLayerValid = false;
     }
 
-    private float computeTimeYOffset(String timeText, Paint timePaint, Rect watchBounds) {
-        float centerY = watchBounds.centerY();
-        Rect textBounds = new Rect();
-        timePaint.getTextBounds(timeText, 0, timeText.length(), textBounds);
-        int textHeight = textBounds.height();
-        return centerY - (textHeight);
+    private void layoutDate(Rect watchBounds) {
+        dateLayoutValid = true;
+        layoutDateTextSize = datePaint.getTextSize();
+        dateXOffset = watchBounds.exactCenterX()
+                - datePaint.measureText(dateChars, 0, dateLength) / 2.0f;
+        datePaint.getTextBounds(dateChars, 0, dateLength, textBounds);
+        dateYOffset = textBounds.height() + 15.0f;
+        // The temperatures are drawn in the same paint
+        tempLayoutValid = false;
+        ambientLayerValid = false;
     }
 
-    private float computeDateYOffset(String dateText, Paint datePaint) {
-        Rect textBounds = new Rect();
-        datePaint.getTextBounds(dateText, 0, dateText.length(), textBounds);
-        return textBounds.height() + 15.0f;
+    private void layoutTemps(Rect watchBounds) {
+        tempLayoutValid = true;
+        ambientLayerValid = false;
+        float centerX = watchBounds.exactCenterX();
+        if (highTemp != null) {
+            highTempXOffset = centerX - datePaint.measureText(highTemp) / 2.0f;
+            highTempYOffset = computeTempYOffset(highTemp);
+        }
+        if (lowTemp != null) {
+            lowTempXOffset = centerX + datePaint.measureText(lowTemp);
+            lowTempYOffset = computeTempYOffset(lowTemp);
+        }
     }
 
-    public void setAntiAlias(boolean antiAlias) {
-        timePaint.setAntiAlias(antiAlias);
-        datePaint.setAntiAlias(antiAlias);
+    private float computeTempYOffset(String tempText) {
+        datePaint.getTextBounds(tempText, 0, tempText.length(), textBounds);
+        return textBounds.height() + 50.0f;
     }
 
     public void updateDateAndTimeColourTo(int colour) {
         dateAndTimeColour = colour;
         timePaint.setColor(colour);
         datePaint.setColor(colour);
+        ambientLayerValid = false;
     }
 
     public void updateTimeZoneWith(String timeZone) {
@@ -176,10 +352,12 @@ public class SunshineWatchFace {
     public void updateDateAndTimeColourToDefault() {
         timePaint.setColor(DATE_AND_TIME_DEFAULT_COLOUR);
         datePaint.setColor(DATE_AND_TIME_DEFAULT_COLOUR);
+        ambientLayerValid = false;
     }
 
     public void restoreDateAndTimeColour() {
         timePaint.setColor(dateAndTimeColour);
         datePaint.setColor(dateAndTimeColour);
+        ambientLayerValid = false;
     }
 }
@@ -4,15 +4,14 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Rect;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.support.wearable.watchface.CanvasWatchFaceService;
+import android.support.wearable.watchface.WatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.util.Log;
 import android.view.SurfaceHolder;
@@ -20,7 +19,6 @@ import android.view.SurfaceHolder;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
@@ -30,12 +28,14 @@ import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
 import java.util.concurrent.TimeUnit;
 
 public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
     private static final long TICK_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    // A minute's worth of interactive frames, and an ambient one every ten minutes
+    private static final int INTERACTIVE_FRAMES_PER_REPORT = 60;
+    private static final int AMBIENT_FRAMES_PER_REPORT = 10;
 
     @Override
     public Engine onCreateEngine() {
@@ -49,6 +49,13 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         private static final String TAG = "SimpleEngine";
 
         private SunshineWatchFace watchFace;
+        private int iconResource = -1;
+        private boolean hasForecast;
+        private WearForecastStore forecastStore;
+        private FrameStats interactiveFrameStats;
+        private FrameStats ambientFrameStats;
+        private boolean lowBitAmbient;
+        private boolean burnInProtection;
         private Handler timeTick;
         public GoogleApiClient googleApiClient;
 
@@ -67,11 +74,24 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             startTimerIfNecessary();
 
             watchFace = SunshineWatchFace.newInstance(SunshineWatchFaceService.this);
+            interactiveFrameStats = new FrameStats("interactive", INTERACTIVE_FRAMES_PER_REPORT);
+            ambientFrameStats = new FrameStats("ambient", AMBIENT_FRAMES_PER_REPORT);
+
+            // Whatever the phone sent last, so the first frame already has weather
+            forecastStore = new WearForecastStore(SunshineWatchFaceService.this);
+            WearForecast storedForecast = forecastStore.load();
+            if (storedForecast != null) {
+                showForecast(storedForecast);
+            }
+
+            // Stays connected for the engine's whole life, rather than being rebuilt every time
+            // the screen turns on
             googleApiClient = new GoogleApiClient.Builder(SunshineWatchFaceService.this)
                     .addApi(Wearable.API)
                     .addConnectionCallbacks(this)
                     .addOnConnectionFailedListener(this)
                     .build();
+            googleApiClient.connect();
         }
 
         private void startTimerIfNecessary() {
@@ -107,18 +127,18 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onVisibilityChanged(visible);
             if (visible) {
                 registerTimeZoneReceiver();
-                googleApiClient.connect();
             } else {
                 unregisterTimeZoneReceiver();
-                releaseGoogleApiClient();
             }
 
             startTimerIfNecessary();
         }
 
         private void releaseGoogleApiClient() {
-            if (googleApiClient != null && googleApiClient.isConnected()) {
-                Wearable.DataApi.removeListener(googleApiClient, onDataChangedListener);
+            if (googleApiClient != null) {
+                if (googleApiClient.isConnected()) {
+                    Wearable.DataApi.removeListener(googleApiClient, onDataChangedListener);
+                }
                 googleApiClient.disconnect();
             }
         }
@@ -145,7 +165,13 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         public void onDraw(Canvas canvas, Rect bounds) {
             super.onDraw(canvas, bounds);
 
+            FrameStats frameStats = isInAmbientMode() ? ambientFrameStats : interactiveFrameStats;
+            frameStats.startFrame();
             watchFace.draw(canvas, bounds);
+            frameStats.endFrame();
+            if (hasForecast) {
+                interactiveFrameStats.weatherDrawn();
+            }
         }
 
         @Override
@@ -154,10 +180,19 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             invalidate();
         }
 
+        @Override
+        public void onPropertiesChanged(Bundle properties) {
+            super.onPropertiesChanged(properties);
+            lowBitAmbient = properties.getBoolean(WatchFaceService.PROPERTY_LOW_BIT_AMBIENT, false);
+            burnInProtection = properties.getBoolean(WatchFaceService.PROPERTY_BURN_IN_PROTECTION,
+                    false);
+            watchFace.setAmbient(isInAmbientMode(), lowBitAmbient, burnInProtection);
+        }
+
         @Override
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
-            watchFace.setAntiAlias(!inAmbientMode);
+            watchFace.setAmbient(inAmbientMode, lowBitAmbient, burnInProtection);
             watchFace.setShowSeconds(!isInAmbientMode());
 
             if (inAmbientMode) {
@@ -199,17 +234,26 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         private void processConfigurationFor(DataItem item) {
             if (WatchfaceSyncCommons.PATH.equals(item.getUri().getPath())) {
                 DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
-                String min_temp = dataMap.getString("minTemp");
-                String max_temp = dataMap.getString("maxTemp");
-                watchFace.setTemp(max_temp, min_temp);
-                invalidate();
-            } else if (WatchfaceSyncCommons.IMG_PATH.equals(item.getUri().getPath())) {
-                Asset photoAsset = DataMapItem.fromDataItem(item).getDataMap()
-                        .getAsset(WatchfaceSyncCommons.IMAGE_KEY);
-                // Loads image on background thread.
-                new LoadBitmapAsyncTask().execute(photoAsset);
+                WearForecast forecast = WearForecast.fromBytes(
+                        dataMap.getByteArray(WatchfaceSyncCommons.FORECAST_KEY));
+                if (forecast != null) {
+                    showForecast(forecast);
+                    forecastStore.save(forecast);
+                }
+            }
+        }
 
+        private void showForecast(WearForecast forecast) {
+            hasForecast = true;
+            watchFace.setTemp(forecast.formatHigh(), forecast.formatLow(), forecast.getUnit());
+            // The icons are bundled at the size they are drawn, so there's nothing to scale
+            int resource = forecast.getIconResource();
+            if (resource != iconResource) {
+                iconResource = resource;
+                watchFace.setBitmap(resource != -1
+                        ? BitmapFactory.decodeResource(getResources(), resource) : null);
             }
+            invalidate();
         }
 
         private final ResultCallback<DataItemBuffer> onConnectedResultCallback = new ResultCallback<DataItemBuffer>() {
@@ -238,43 +282,12 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         public void onDestroy() {
             timeTick.removeCallbacks(timeRunnable);
             releaseGoogleApiClient();
+            interactiveFrameStats.release();
+            ambientFrameStats.release();
+            watchFace.release();
 
             super.onDestroy();
         }
-
-
-        private class LoadBitmapAsyncTask extends AsyncTask<Asset, Void, Bitmap> {
-
-            @Override
-            protected Bitmap doInBackground(Asset... params) {
-
-                if (params.length > 0) {
-
-                    Asset asset = params[0];
-
-                    InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                            googleApiClient, asset).await().getInputStream();
-
-                    if (assetInputStream == null) {
-                        Log.d("de", "Requested an unknown Asset.");
-                        return null;
-                    }
-                    return Bitmap.createScaledBitmap(BitmapFactory.decodeStream(assetInputStream), 80, 80, false);
-
-                } else {
-                    Log.e("Error", "Asset must be non-null");
-                    return null;
-                }
-            }
-
-            @Override
-            protected void onPostExecute(Bitmap bitmap) {
-
-                if (bitmap != null) {
-                    watchFace.setBitmap(bitmap);
-                }
-            }
-        }
     }
 
     public final class WatchfaceSyncCommons {
@@ -283,8 +296,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         }
 
         public static final String PATH = "/wearable-data";
-        public static final String IMG_PATH = "/image";
-        private static final String IMAGE_KEY = "photo";
+        // A WearForecast payload
+        public static final String FORECAST_KEY = "forecast";
 
     }
 
@@ -0,0 +1,111 @@
+package com.example.android.sunshine.app;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Today's forecast as the phone publishes it under {@link
+ * SunshineWatchFaceService.WatchfaceSyncCommons#PATH}.  The payload layout is documented, and
+ * written, by the phone's WearableForecastService; a version this class doesn't know is ignored
+ * rather than misread.
+ */
+public class WearForecast {
+
+    static final byte PAYLOAD_VERSION = 1;
+    static final int PAYLOAD_SIZE = 8;
+    static final int FLAG_METRIC = 1;
+
+    private static final String TEMPERATURE_FORMAT = "%1.0f\u00B0";
+
+    private final int weatherId;
+    // Tenths of a degree Celsius
+    private final short high;
+    private final short low;
+    private final boolean metric;
+
+    WearForecast(int weatherId, short high, short low, boolean metric) {
+        this.weatherId = weatherId;
+        this.high = high;
+        this.low = low;
+        this.metric = metric;
+    }
+
+    /**
+     * @return the forecast, or null if the payload isn't one this watch face understands
+     */
+    public static WearForecast fromBytes(byte[] payload) {
+        if (payload == null || payload.length < PAYLOAD_SIZE || payload[0] != PAYLOAD_VERSION) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        buffer.get();
+        boolean metric = (buffer.get() & FLAG_METRIC) != 0;
+        int weatherId = buffer.getShort();
+        short high = buffer.getShort();
+        short low = buffer.getShort();
+        return new WearForecast(weatherId, high, low, metric);
+    }
+
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(PAYLOAD_SIZE)
+                .put(PAYLOAD_VERSION)
+                .put((byte) (metric ? FLAG_METRIC : 0))
+                .putShort((short) weatherId)
+                .putShort(high)
+                .putShort(low)
+                .array();
+    }
+
+    public String formatHigh() {
+        return formatTemperature(high);
+    }
+
+    public String formatLow() {
+        return formatTemperature(low);
+    }
+
+    public String getUnit() {
+        return metric ? "C" : "F";
+    }
+
+    private String formatTemperature(short tenths) {
+        double temperature = tenths / 10.0;
+        if (!metric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return String.format(Locale.getDefault(), TEMPERATURE_FORMAT, temperature);
+    }
+
+    /**
+     * @return the bundled icon for the weather condition, sized for the watch face, or -1 if
+     *         there is none
+     */
+    public int getIconResource() {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Keeps the last forecast received from the phone in a small file, so that a new engine can
+ * draw it on its very first frame instead of waiting for the Data Layer to connect.  The record
+ * is the {@link WearForecast} payload as it came in, a few bytes, so reading it on the UI
+ * thread is fine.
+ */
+class WearForecastStore {
+
+    private static final String TAG = "WearForecastStore";
+    private static final String FILE_NAME = "forecast";
+
+    private final AtomicFile file;
+    private byte[] stored;
+
+    WearForecastStore(Context context) {
+        file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * @return the stored forecast, or null if there is none yet or it can't be read
+     */
+    WearForecast load() {
+        try {
+            stored = file.readFully();
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read the stored forecast", e);
+            return null;
+        }
+        return WearForecast.fromBytes(stored);
+    }
+
+    void save(WearForecast forecast) {
+        byte[] payload = forecast.toBytes();
+        if (Arrays.equals(payload, stored)) {
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            out.write(payload);
+            file.finishWrite(out);
+            stored = payload;
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't store the forecast", e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+}